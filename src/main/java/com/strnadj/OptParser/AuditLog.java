@@ -0,0 +1,542 @@
+package com.strnadj.OptParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous audit log of parsed commands - one line per parse (successful
+ * or failed) in rotating local file.
+ *
+ * Parsing thread only claims preallocated slot of lock-free ring buffer and
+ * stores references (parameters, result, exception), record is formatted and
+ * written by background writer in batches through FileChannel. When buffer is
+ * full record is dropped (POLICY_DROP, counted) or parsing thread waits for
+ * free slot (POLICY_BLOCK). Parameters array must not be changed after parse.
+ *
+ * Line: time, command, ok|error, [exception, first line of message,] filled
+ * options (--name or --name=value), paths or expressions (name=value) and
+ * parameters after end of options (--, parameters), failed parse logs raw parameters instead. Fields are separated by tab,
+ * tab, new line and backslash in values are escaped. Successful lazy parse
+ * (status lazy) logs filled options and fixed paths or expressions followed
+ * by raw parameters, variadic values are not read yet.
+ *
+ * @author strnadj
+ */
+public class AuditLog implements Closeable {
+	/** Full buffer - drop record. */
+	public final static int POLICY_DROP = 1;
+
+	/** Full buffer - wait for free slot. */
+	public final static int POLICY_BLOCK = 2;
+
+	/** Defaults. */
+	public final static int DEFAULT_CAPACITY = 8192;
+	public final static long DEFAULT_MAX_FILE_SIZE = 64L << 20;
+	public final static int DEFAULT_MAX_FILES = 5;
+
+	/** Records written in one batch at most. */
+	private final static int BATCH = 256;
+
+	/** Writer sleep when buffer is empty (ns). */
+	private final static long IDLE_NANOS = 1000000L;
+
+	/**
+	 * Preallocated record slot.
+	 */
+	private final static class Slot {
+		/** Slot sequence (free for producer at pos, filled at pos + 1). */
+		volatile long sequence;
+
+		long time;
+		OptParser parser;
+		String [] parameters;
+		ParseResult result;
+		Exception error;
+		boolean lazy;
+	}
+
+	/** Slot sequence access (release store by producer). */
+	private final static VarHandle SEQUENCE;
+
+	static {
+		try {
+			SEQUENCE = MethodHandles.lookup().findVarHandle(Slot.class, "sequence", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** Ring buffer. */
+	private final Slot [] slots;
+	private final int mask;
+
+	/** Next claimed position (producers). */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Next written position (writer only). */
+	private volatile long head = 0;
+
+	/** Full buffer policy. */
+	private final int policy;
+
+	/** Log file and rotation. */
+	private final Path file;
+	private final long maxFileSize;
+	private final int maxFiles;
+	private FileChannel channel;
+
+	/** Statistics. */
+	private final LongAdder dropped = new LongAdder();
+	private volatile long written = 0;
+	private volatile long lost = 0;
+
+	/** Last write error or null. */
+	private volatile IOException lastError;
+
+	/** Closed? */
+	private volatile boolean closed = false;
+
+	/** Writer thread. */
+	private final Thread writer;
+
+	/**
+	 * Open audit log with default buffer, drop policy and rotation.
+	 *
+	 * @param file Log file
+	 *
+	 * @throws IOException File can't be opened
+	 *
+	 * @return Audit log
+	 */
+	public static AuditLog open(Path file) throws IOException {
+		return new AuditLog(file, DEFAULT_CAPACITY, POLICY_DROP, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_FILES);
+	}
+
+	/**
+	 * Open audit log and start writer.
+	 *
+	 * @param file Log file (appended, rotated to file.1 ... file.N)
+	 * @param capacity Count of buffered records (rounded to power of two)
+	 * @param policy POLICY_DROP or POLICY_BLOCK
+	 * @param maxFileSize File is rotated when it would exceed size
+	 * @param maxFiles Count of rotated files kept
+	 *
+	 * @throws IOException File can't be opened
+	 */
+	public AuditLog(Path file, int capacity, int policy, long maxFileSize, int maxFiles) throws IOException {
+		if (capacity < 1 || capacity > (1 << 30)) {
+			throw new IllegalArgumentException("Capacity must be in 1.." + (1 << 30) + "!");
+		}
+		if (policy != POLICY_DROP && policy != POLICY_BLOCK) {
+			throw new IllegalArgumentException("Unknown policy " + policy + "!");
+		}
+		if (maxFileSize < 1 || maxFiles < 0) {
+			throw new IllegalArgumentException("Invalid rotation!");
+		}
+
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.slots = new Slot[size];
+		for (int i = 0; i < size; i++) {
+			slots[i] = new Slot();
+			slots[i].sequence = i;
+		}
+		this.mask = size - 1;
+
+		this.policy = policy;
+		this.file = file.toAbsolutePath();
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		this.channel = openChannel();
+
+		this.writer = new Thread(this::drain, "optparser-audit");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Open log file for append.
+	 *
+	 * @throws IOException File can't be opened
+	 *
+	 * @return Channel
+	 */
+	private FileChannel openChannel() throws IOException {
+		return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Add record of parse (called by parser).
+	 *
+	 * @param parser Parser
+	 * @param parameters Raw parameters
+	 * @param result Result (partial on failure)
+	 * @param error Exception or null on success
+	 *
+	 * @return False when record was dropped
+	 */
+	boolean record(OptParser parser, String [] parameters, ParseResult result, Exception error) {
+		return record(parser, parameters, result, error, false);
+	}
+
+	/**
+	 * Add record of parse (called by parser).
+	 *
+	 * @param parser Parser
+	 * @param parameters Raw parameters
+	 * @param result Result (partial on failure)
+	 * @param error Exception or null on success
+	 * @param lazy Parsed lazily (variadic values are not in result)
+	 *
+	 * @return False when record was dropped
+	 */
+	boolean record(OptParser parser, String [] parameters, ParseResult result, Exception error, boolean lazy) {
+		if (closed) {
+			dropped.increment();
+			return false;
+		}
+
+		long time = System.currentTimeMillis();
+		Slot slot;
+		long pos;
+		int waits = 0;
+		while (true) {
+			pos = tail.get();
+			slot = slots[(int) pos & mask];
+			long dif = slot.sequence - pos;
+			if (dif == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					break;
+				}
+			} else if (dif < 0) {
+				// Buffer is full
+				if (policy == POLICY_DROP) {
+					dropped.increment();
+					return false;
+				}
+				if (++waits < 100) {
+					Thread.onSpinWait();
+				} else {
+					LockSupport.parkNanos(IDLE_NANOS / 10);
+				}
+			}
+		}
+
+		slot.time = time;
+		slot.parser = parser;
+		slot.parameters = parameters;
+		slot.result = result;
+		slot.error = error;
+		slot.lazy = lazy;
+		SEQUENCE.setRelease(slot, pos + 1);
+		return true;
+	}
+
+	/**
+	 * Writer loop - drain filled slots in batches.
+	 */
+	private void drain() {
+		StringBuilder batch = new StringBuilder(16384);
+		while (true) {
+			boolean stop = closed;
+			long pos = head;
+			int count = 0;
+			while (count < BATCH) {
+				Slot slot = slots[(int) pos & mask];
+				if ((long) SEQUENCE.getAcquire(slot) != pos + 1) {
+					break;
+				}
+				format(batch, slot);
+
+				// Release slot for next round
+				slot.parser = null;
+				slot.parameters = null;
+				slot.result = null;
+				slot.error = null;
+				SEQUENCE.setRelease(slot, pos + slots.length);
+				pos++;
+				count++;
+			}
+
+			if (count > 0) {
+				if (write(batch)) {
+					written += count;
+				} else {
+					lost += count;
+				}
+				batch.setLength(0);
+				head = pos;
+			} else if (stop && pos == tail.get()) {
+				// Every claimed slot is written
+				return;
+			} else {
+				LockSupport.parkNanos(IDLE_NANOS);
+			}
+		}
+	}
+
+	/**
+	 * Format record line.
+	 *
+	 * @param sb Batch
+	 * @param slot Filled slot
+	 */
+	private static void format(StringBuilder sb, Slot slot) {
+		OptParser parser = slot.parser;
+		sb.append(Instant.ofEpochMilli(slot.time)).append('\t');
+		escape(sb, parser.getCommandName());
+
+		if (slot.error != null) {
+			sb.append("\terror\t").append(slot.error.getClass().getSimpleName()).append('\t');
+			String message = slot.error.getMessage();
+			if (message != null) {
+				int nl = message.indexOf('\n');
+				escape(sb, nl < 0 ? message : message.substring(0, nl));
+			}
+			for (String p : slot.parameters) {
+				sb.append('\t');
+				escape(sb, p);
+			}
+		} else {
+			sb.append(slot.lazy ? "\tlazy" : "\tok");
+			long [] filled = slot.result.filled;
+			for (int word = 0; word < filled.length; word++) {
+				long bits = filled[word];
+				while (bits != 0) {
+					int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+					bits &= bits - 1;
+
+					Option o = parser.getOptionById(id);
+					Object value = slot.result.raw(id);
+					if (slot.lazy && o.POSITION != -1 && value == null) {
+						// Variadic values are in raw parameters
+						continue;
+					}
+					if (o.POSITION == -1) {
+						sb.append("\t--");
+						escape(sb, o.getFullName());
+						if (value != null) {
+							sb.append('=');
+							escape(sb, (String) value);
+						}
+					} else if (value instanceof List) {
+						for (Object v : (List<?>) value) {
+							sb.append('\t');
+							escape(sb, o.getFullName());
+							sb.append('=');
+							escape(sb, (String) v);
+						}
+					} else {
+						sb.append('\t');
+						escape(sb, o.getFullName());
+						if (value != null) {
+							sb.append('=');
+							escape(sb, (String) value);
+						}
+					}
+				}
+			}
+
+			// Passed through parameters
+			List<String> remaining = slot.result.getRemainingArguments();
+			if (slot.lazy) {
+				for (String p : slot.parameters) {
+					sb.append('\t');
+					escape(sb, p);
+				}
+			} else if (!remaining.isEmpty()) {
+				sb.append("\t--");
+				for (String p : remaining) {
+					sb.append('\t');
+					escape(sb, p);
+				}
+			}
+		}
+		sb.append('\n');
+	}
+
+	/**
+	 * Append value with escaped tab, new line and backslash.
+	 *
+	 * @param sb Batch
+	 * @param value Value
+	 */
+	private static void escape(StringBuilder sb, String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\t':
+				sb.append("\\t");
+				break;
+			case '\n':
+				sb.append("\\n");
+				break;
+			case '\r':
+				sb.append("\\r");
+				break;
+			case '\\':
+				sb.append("\\\\");
+				break;
+			default:
+				sb.append(c);
+			}
+		}
+	}
+
+	/**
+	 * Write batch, rotate file when it would exceed maximal size (failed
+	 * rotation is recorded and batch is appended to current file).
+	 *
+	 * @param batch Batch
+	 *
+	 * @return False when batch was not written
+	 */
+	private boolean write(StringBuilder batch) {
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(batch));
+		try {
+			if (!channel.isOpen()) {
+				// Reopen failed last time
+				channel = openChannel();
+			}
+			if (channel.size() > 0 && channel.size() + bytes.remaining() > maxFileSize) {
+				try {
+					rotate();
+				} catch (IOException e) {
+					lastError = e;
+				}
+			}
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			return true;
+		} catch (IOException e) {
+			// Records of batch are lost, next batch tries again
+			lastError = e;
+			return false;
+		}
+	}
+
+	/**
+	 * Rotate files - file.N-1 to file.N, ..., file to file.1, log file is
+	 * reopened also when rotation fails.
+	 *
+	 * @throws IOException Rotation failed
+	 */
+	private void rotate() throws IOException {
+		channel.close();
+		try {
+			if (maxFiles == 0) {
+				Files.delete(file);
+			} else {
+				Files.deleteIfExists(rotated(maxFiles));
+				for (int i = maxFiles - 1; i >= 1; i--) {
+					if (Files.exists(rotated(i))) {
+						Files.move(rotated(i), rotated(i + 1), StandardCopyOption.ATOMIC_MOVE);
+					}
+				}
+				Files.move(file, rotated(1), StandardCopyOption.ATOMIC_MOVE);
+			}
+		} finally {
+			channel = openChannel();
+		}
+	}
+
+	/**
+	 * Path of rotated file.
+	 *
+	 * @param index Index
+	 *
+	 * @return Path
+	 */
+	private Path rotated(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+
+	/**
+	 * Wait until all records added before are written.
+	 *
+	 * @throws InterruptedException Interrupted
+	 */
+	public void flush() throws InterruptedException {
+		long target = tail.get();
+		while (head < target && writer.isAlive()) {
+			Thread.sleep(1);
+		}
+	}
+
+	/**
+	 * Count of dropped records (full buffer or closed log).
+	 *
+	 * @return Count
+	 */
+	public long getDroppedCount() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Count of written records.
+	 *
+	 * @return Count
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * Count of records lost by failed write (see getLastError).
+	 *
+	 * @return Count
+	 */
+	public long getLostCount() {
+		return lost;
+	}
+
+	/**
+	 * Return last write error.
+	 *
+	 * @return Exception or null
+	 */
+	public IOException getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Write buffered records and close file (later records are dropped).
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (channel.isOpen()) {
+			try {
+				channel.force(false);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+}
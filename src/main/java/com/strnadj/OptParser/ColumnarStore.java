@@ -0,0 +1,556 @@
+package com.strnadj.OptParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Columnar store of bulk parsed invocations - one row per invocation, one column per option.
+ *
+ * Filled options are bitsets (flags are stored only as bits), values are
+ * dictionary encoded strings stored as int codes, variadic paths or
+ * expressions have int offsets into flat column of codes. Columns and
+ * dictionary strings (UTF-8) live on heap or in memory-mapped files (spill
+ * directory). Only lookup of dictionary codes is on heap, it is bounded -
+ * when it is full, new values get own code without deduplication (high
+ * cardinality columns like paths). Spill files are removed on close.
+ *
+ * Store is not thread safe, rows are appended by one thread.
+ *
+ * @author strnadj
+ */
+public class ColumnarStore implements Closeable {
+	/** Column kinds. */
+	private final static int KIND_FLAG = 1;
+	private final static int KIND_VALUE = 2;
+	private final static int KIND_VARIADIC = 3;
+
+	/** Initial size of buffers in bytes. */
+	private final static int INITIAL_BYTES = 4096;
+
+	/** Default maximal count of deduplicated values of column. */
+	public final static int DEFAULT_DICTIONARY_SIZE = 1 << 16;
+
+	/**
+	 * Growable primitive buffer on heap or in memory-mapped file.
+	 */
+	private final static class Buffer {
+		/** File channel (null on heap). */
+		private final FileChannel channel;
+
+		/** Spill file (null on heap). */
+		private final Path file;
+
+		/** Data. */
+		private ByteBuffer data;
+
+		Buffer(Path file) throws IOException {
+			this.file = file;
+			if (file == null) {
+				this.channel = null;
+				this.data = ByteBuffer.allocate(INITIAL_BYTES);
+			} else {
+				this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				this.data = channel.map(FileChannel.MapMode.READ_WRITE, 0, INITIAL_BYTES);
+			}
+		}
+
+		/**
+		 * Ensure buffer has at least given size.
+		 *
+		 * @param bytes Size in bytes
+		 */
+		void ensure(long bytes) throws IOException {
+			if (bytes <= data.capacity()) {
+				return;
+			}
+			if (bytes > Integer.MAX_VALUE) {
+				throw new IllegalStateException("Column is full");
+			}
+
+			int size = (int) Math.min(Integer.MAX_VALUE, Math.max(bytes, (long) data.capacity() * 2));
+			if (channel == null) {
+				ByteBuffer bigger = ByteBuffer.allocate(size);
+				bigger.put(data.clear());
+				data = bigger;
+			} else {
+				// Larger mapping of same file, old mapping is released by GC
+				data = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			}
+		}
+
+		int getInt(int index) {
+			return data.getInt(index << 2);
+		}
+
+		void putInt(int index, int value) throws IOException {
+			ensure(((long) index + 1) << 2);
+			data.putInt(index << 2, value);
+		}
+
+		boolean getBit(int index) {
+			long word = (long) (index >>> 6) << 3;
+			return word < data.capacity() && (data.getLong((int) word) & (1L << index)) != 0;
+		}
+
+		void setBit(int index) throws IOException {
+			int word = (index >>> 6) << 3;
+			ensure(word + 8L);
+			data.putLong(word, data.getLong(word) | (1L << index));
+		}
+
+		void clearBit(int index) {
+			int word = (index >>> 6) << 3;
+			if (word + 8L <= data.capacity()) {
+				data.putLong(word, data.getLong(word) & ~(1L << index));
+			}
+		}
+
+		void putBytes(int offset, byte [] bytes) throws IOException {
+			ensure((long) offset + bytes.length);
+			data.put(offset, bytes);
+		}
+
+		String getString(int offset, int length) {
+			byte [] bytes = new byte[length];
+			data.get(offset, bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+				Files.deleteIfExists(file);
+			}
+		}
+	}
+
+	/**
+	 * One column (option).
+	 */
+	private final static class Column {
+		/** Column kind. */
+		final int kind;
+
+		/** Filled rows. */
+		final Buffer filled;
+
+		/** Dictionary codes (value: by row, variadic: flat). */
+		final Buffer codes;
+
+		/** Variadic offsets into codes (row + 1 entries). */
+		final Buffer offsets;
+
+		/** Count of variadic codes. */
+		int codeCount = 0;
+
+		/** Dictionary strings (UTF-8) and their ends by code. */
+		final Buffer strings;
+		final Buffer ends;
+		int stringCount = 0;
+		int byteCount = 0;
+
+		/** Codes of values (bounded). */
+		final HashMap<String, Integer> dictionary = new HashMap<String, Integer>();
+		final int maxDictionarySize;
+
+		Column(int kind, Buffer filled, Buffer codes, Buffer offsets, Buffer strings, Buffer ends, int maxDictionarySize) {
+			this.kind = kind;
+			this.filled = filled;
+			this.codes = codes;
+			this.offsets = offsets;
+			this.strings = strings;
+			this.ends = ends;
+			this.maxDictionarySize = maxDictionarySize;
+		}
+
+		/**
+		 * Return dictionary code of string (add it when missing).
+		 */
+		int encode(String s) throws IOException {
+			Integer code = dictionary.get(s);
+			if (code != null) {
+				return code;
+			}
+
+			byte [] bytes = s.getBytes(StandardCharsets.UTF_8);
+			strings.putBytes(byteCount, bytes);
+			ends.putInt(stringCount, byteCount + bytes.length);
+			byteCount += bytes.length;
+			if (dictionary.size() < maxDictionarySize) {
+				dictionary.put(s, stringCount);
+			}
+			return stringCount++;
+		}
+
+		/**
+		 * Return string of dictionary code.
+		 */
+		String decode(int code) {
+			if (code < 0 || code >= stringCount) {
+				throw new IndexOutOfBoundsException("Code: " + code + ", dictionary size: " + stringCount);
+			}
+			int from = code == 0 ? 0 : ends.getInt(code - 1);
+			return strings.getString(from, ends.getInt(code) - from);
+		}
+	}
+
+	/** Parser definition. */
+	private final OptParser parser;
+
+	/** Columns by option id. */
+	private final Column [] columns;
+
+	/** Count of rows. */
+	private int rows = 0;
+
+	/**
+	 * Create store on heap.
+	 *
+	 * @param parser Parser definition
+	 *
+	 * @return Store
+	 */
+	public static ColumnarStore create(OptParser parser) throws IOException {
+		return new ColumnarStore(parser, null, DEFAULT_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * Create store in memory-mapped files.
+	 *
+	 * @param parser Parser definition
+	 * @param spillDirectory Directory for column files
+	 *
+	 * @return Store
+	 */
+	public static ColumnarStore create(OptParser parser, Path spillDirectory) throws IOException {
+		return new ColumnarStore(parser, spillDirectory, DEFAULT_DICTIONARY_SIZE);
+	}
+
+	/**
+	 * Create store with bounded dictionaries.
+	 *
+	 * @param parser Parser definition
+	 * @param spillDirectory Directory for column files or null (heap)
+	 * @param maxDictionarySize Maximal count of deduplicated values of column
+	 *
+	 * @return Store
+	 */
+	public static ColumnarStore create(OptParser parser, Path spillDirectory, int maxDictionarySize) throws IOException {
+		if (maxDictionarySize < 0) {
+			throw new IllegalArgumentException("Dictionary size must not be negative!");
+		}
+		return new ColumnarStore(parser, spillDirectory, maxDictionarySize);
+	}
+
+	/**
+	 * Create columns for all options of parser.
+	 *
+	 * @param parser Parser definition
+	 * @param dir Spill directory or null
+	 * @param maxDictionarySize Maximal count of deduplicated values of column
+	 */
+	private ColumnarStore(OptParser parser, Path dir, int maxDictionarySize) throws IOException {
+		this.parser = parser;
+
+		List<Option> options = parser.getOptionsById();
+		this.columns = new Column[options.size()];
+		try {
+			for (Option o : options) {
+				int id = o.getId();
+				int kind = o.isVariadic() ? KIND_VARIADIC : (o.POSITION != -1 || o.isValueRequired()) ? KIND_VALUE : KIND_FLAG;
+
+				Buffer filled = new Buffer(file(dir, id, "filled"));
+				Buffer codes = kind == KIND_FLAG ? null : new Buffer(file(dir, id, "codes"));
+				Buffer offsets = kind == KIND_VARIADIC ? new Buffer(file(dir, id, "offsets")) : null;
+				Buffer strings = kind == KIND_FLAG ? null : new Buffer(file(dir, id, "strings"));
+				Buffer ends = kind == KIND_FLAG ? null : new Buffer(file(dir, id, "ends"));
+				columns[id] = new Column(kind, filled, codes, offsets, strings, ends, maxDictionarySize);
+				if (offsets != null) {
+					offsets.putInt(0, 0);
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Spill file of column.
+	 */
+	private static Path file(Path dir, int id, String name) throws IOException {
+		return dir == null ? null : Files.createTempFile(dir, "column" + id + "-" + name, ".bin").toAbsolutePath();
+	}
+
+	/**
+	 * Parse arguments and append row.
+	 *
+	 * @param parameters Parameters
+	 *
+	 * @return Row index
+	 *
+	 * @throws Exception Parsing exception (row is not added)
+	 */
+	public int add(String [] parameters) throws Exception {
+		return append(parser.parse(parameters));
+	}
+
+	/**
+	 * Append parse result as row.
+	 *
+	 * @param result Parse result of same parser
+	 *
+	 * @return Row index
+	 *
+	 * @throws IOException Spill file failure (row is not added)
+	 */
+	public int append(ParseResult result) throws IOException {
+		if (result.getParser() != parser) {
+			throw new IllegalArgumentException("Result of different parser");
+		}
+
+		int row = rows;
+		try {
+			appendRow(row, result);
+		} catch (IOException | RuntimeException e) {
+			// Next row reuses index, it must not inherit partial row
+			for (Column c : columns) {
+				c.filled.clearBit(row);
+				if (c.kind == KIND_VARIADIC) {
+					c.codeCount = c.offsets.getInt(row);
+				}
+			}
+			throw e;
+		}
+
+		rows++;
+		return row;
+	}
+
+	/**
+	 * Write columns of row.
+	 *
+	 * @param row Row index
+	 * @param result Parse result
+	 *
+	 * @throws IOException Spill file failure
+	 */
+	private void appendRow(int row, ParseResult result) throws IOException {
+		long[] filled = result.filled;
+		for (int word = 0; word < filled.length; word++) {
+			long bits = filled[word];
+			while (bits != 0) {
+				int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
+
+				Column c = columns[id];
+				c.filled.setBit(row);
+
+				Object value = result.raw(id);
+				if (c.kind == KIND_VALUE) {
+					c.codes.putInt(row, c.encode(value == null ? "" : (String) value));
+				} else if (c.kind == KIND_VARIADIC && value instanceof List) {
+					for (Object s : (List<?>) value) {
+						c.codes.putInt(c.codeCount++, c.encode((String) s));
+					}
+				}
+			}
+		}
+
+		// Variadic offsets are written also for rows without values
+		for (Column c : columns) {
+			if (c.kind == KIND_VARIADIC) {
+				c.offsets.putInt(row + 1, c.codeCount);
+			}
+		}
+	}
+
+	/**
+	 * Count of rows.
+	 *
+	 * @return Rows
+	 */
+	public int getRowCount() {
+		return rows;
+	}
+
+	/**
+	 * Return column (option id) of option.
+	 *
+	 * @param optName Option full name
+	 *
+	 * @return Option id
+	 */
+	public int getColumnId(String optName) {
+		Option o = parser.getOptionByFullName(optName);
+		if (o == null) {
+			throw new IllegalArgumentException("Unknown option: " + optName);
+		}
+		return o.getId();
+	}
+
+	/**
+	 * Check row index.
+	 */
+	private void checkRow(int row) {
+		if (row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rows);
+		}
+	}
+
+	/**
+	 * Is option filled in row?
+	 *
+	 * @param row Row index
+	 * @param id Option id
+	 *
+	 * @return True if its
+	 */
+	public boolean isFilled(int row, int id) {
+		checkRow(row);
+		return columns[id].filled.getBit(row);
+	}
+
+	/**
+	 * Is option filled in row?
+	 *
+	 * @param row Row index
+	 * @param optName Option full name
+	 *
+	 * @return True if its
+	 */
+	public boolean isOptionFilled(int row, String optName) {
+		return isFilled(row, getColumnId(optName));
+	}
+
+	/**
+	 * Dictionary code of value in row.
+	 *
+	 * @param row Row index
+	 * @param id Option id
+	 *
+	 * @return Code or -1 when option is not filled or has no value
+	 */
+	public int getCode(int row, int id) {
+		Column c = columns[id];
+		if (c.kind != KIND_VALUE || !isFilled(row, id)) {
+			return -1;
+		}
+		return c.codes.getInt(row);
+	}
+
+	/**
+	 * Return value of dictionary code.
+	 *
+	 * @param id Option id
+	 * @param code Code
+	 *
+	 * @return Value
+	 */
+	public String getDictionaryValue(int id, int code) {
+		return columns[id].decode(code);
+	}
+
+	/**
+	 * Count of dictionary values of option (distinct until dictionary is full).
+	 *
+	 * @param id Option id
+	 *
+	 * @return Size of dictionary
+	 */
+	public int getDictionarySize(int id) {
+		return columns[id].stringCount;
+	}
+
+	/**
+	 * Return value or default value of option in row.
+	 *
+	 * @param row Row index
+	 * @param optName Option full name
+	 *
+	 * @return Value (first value of variadic)
+	 */
+	public String getOptionValue(int row, String optName) {
+		int id = getColumnId(optName);
+		Column c = columns[id];
+
+		if (!isFilled(row, id)) {
+			return parser.getOptionById(id).getDefaultValue();
+		}
+		switch (c.kind) {
+		case KIND_VALUE:
+			return c.decode(c.codes.getInt(row));
+		case KIND_VARIADIC:
+			List<String> values = getOptionValues(row, optName);
+			return values.isEmpty() ? "" : values.get(0);
+		default:
+			return "";
+		}
+	}
+
+	/**
+	 * Return values of variadic path or expression in row.
+	 *
+	 * @param row Row index
+	 * @param optName Option full name
+	 *
+	 * @return Values, empty when not filled
+	 */
+	public List<String> getOptionValues(int row, String optName) {
+		int id = getColumnId(optName);
+		Column c = columns[id];
+
+		if (!isFilled(row, id)) {
+			return Collections.emptyList();
+		}
+		if (c.kind == KIND_VALUE) {
+			return Collections.singletonList(c.decode(c.codes.getInt(row)));
+		}
+		if (c.kind == KIND_FLAG) {
+			return Collections.emptyList();
+		}
+
+		int from = c.offsets.getInt(row);
+		int to = c.offsets.getInt(row + 1);
+		ArrayList<String> ret = new ArrayList<String>(to - from);
+		for (int i = from; i < to; i++) {
+			ret.add(c.decode(c.codes.getInt(i)));
+		}
+		return ret;
+	}
+
+	/**
+	 * Close spill files.
+	 */
+	@Override
+	public void close() throws IOException {
+		IOException failure = null;
+		for (Column c : columns) {
+			if (c == null) {
+				continue;
+			}
+			for (Buffer b : new Buffer[] {c.filled, c.codes, c.offsets, c.strings, c.ends}) {
+				try {
+					if (b != null) {
+						b.close();
+					}
+				} catch (IOException e) {
+					failure = e;
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+}
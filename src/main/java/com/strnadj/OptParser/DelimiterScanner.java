@@ -0,0 +1,128 @@
+package com.strnadj.OptParser;
+
+/**
+ * Finds next tokenizer delimiter (space, quote or backslash), chars between
+ * delimiters are copied to token at once.
+ *
+ * Short ranges are scanned by scalar loop. Long ranges are scanned by Vector
+ * API (wide chunks) when module jdk.incubator.vector is present at runtime
+ * (java --add-modules jdk.incubator.vector) and it is not disabled by
+ * -Doptparser.vector=false, scalar loop is default.
+ *
+ * Scanner is not thread-safe (vector scanner has chunk buffer), every
+ * tokenizer creates own one.
+ *
+ * @author strnadj
+ */
+class DelimiterScanner {
+	/** Ranges shorter than this are scanned by scalar loop. */
+	final static int WIDE_RANGE = 32;
+
+	/**
+	 * Selected implementation (resolved on first long range, not on cold start).
+	 */
+	private final static class Selected {
+		/** Scanner creating new scanners of selected implementation. */
+		final static DelimiterScanner PROTOTYPE = select();
+
+		/**
+		 * Select implementation.
+		 *
+		 * @return Prototype scanner
+		 */
+		private static DelimiterScanner select() {
+			if (Boolean.parseBoolean(System.getProperty("optparser.vector", "true"))
+					&& ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+				try {
+					// Vector class is not touched without module
+					return (DelimiterScanner) Class.forName("com.strnadj.OptParser.VectorDelimiterScanner").getDeclaredConstructor().newInstance();
+				} catch (ReflectiveOperationException | LinkageError e) {
+					// Fall back to scalar scanner
+				}
+			}
+			return new DelimiterScanner();
+		}
+	}
+
+	/** Scanner of long ranges (created on first one). */
+	private DelimiterScanner wide;
+
+	/**
+	 * Create scanner.
+	 *
+	 * @return Scanner
+	 */
+	static DelimiterScanner create() {
+		return new DelimiterScanner();
+	}
+
+	/**
+	 * Create scanner of same implementation.
+	 *
+	 * @return Scanner
+	 */
+	DelimiterScanner newScanner() {
+		return new DelimiterScanner();
+	}
+
+	/**
+	 * Is char delimiter?
+	 *
+	 * @param c Char
+	 *
+	 * @return True if its
+	 */
+	static boolean isDelimiter(char c) {
+		return c == ' ' || c == '\'' || c == '"' || c == '\\';
+	}
+
+	/**
+	 * Return index of first delimiter in range.
+	 *
+	 * @param s String
+	 * @param from Start index
+	 * @param to End index (exclusive)
+	 *
+	 * @return Index of delimiter or to when there is none
+	 */
+	final int indexOf(String s, int from, int to) {
+		if (to - from >= WIDE_RANGE) {
+			if (wide == null) {
+				wide = Selected.PROTOTYPE.newScanner();
+			}
+			return wide.wideIndexOf(s, from, to);
+		}
+		return scalarIndexOf(s, from, to);
+	}
+
+	/**
+	 * Return index of first delimiter in long range.
+	 *
+	 * @param s String
+	 * @param from Start index
+	 * @param to End index (exclusive)
+	 *
+	 * @return Index of delimiter or to when there is none
+	 */
+	int wideIndexOf(String s, int from, int to) {
+		return scalarIndexOf(s, from, to);
+	}
+
+	/**
+	 * Scalar loop.
+	 *
+	 * @param s String
+	 * @param from Start index
+	 * @param to End index (exclusive)
+	 *
+	 * @return Index of delimiter or to when there is none
+	 */
+	static int scalarIndexOf(String s, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (isDelimiter(s.charAt(i))) {
+				return i;
+			}
+		}
+		return to;
+	}
+}
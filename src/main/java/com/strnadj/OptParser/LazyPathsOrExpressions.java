@@ -0,0 +1,126 @@
+package com.strnadj.OptParser;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+import com.strnadj.OptParser.exceptions.OverlapingBracketsException;
+
+/**
+ * Lazy paths or expressions - values are tokenized on demand from the rest of input.
+ * 
+ * Can be iterated only once. Spliterator splits in batches, so values can be
+ * processed in parallel by StreamSupport.stream(values.spliterator(), true).
+ * Quoting errors found while iterating are thrown as IllegalArgumentException
+ * with OverlapingBracketsException as a cause. Values end at "--", parameters
+ * after it are not tokenized (getRemainingArguments).
+ * 
+ * @author strnadj
+ */
+public class LazyPathsOrExpressions implements Iterator<String>, Iterable<String> {
+	/** Tokenizer with rest of input. */
+	private final Tokenizer tokenizer;
+	
+	/** Prefetched value (null when not fetched or end). */
+	private String next;
+	
+	/** End of input reached? */
+	private boolean end = false;
+	
+	/** Parameters after end of options "--". */
+	private List<String> remaining = Collections.emptyList();
+	
+	/**
+	 * Create lazy values.
+	 * 
+	 * @param tokenizer Tokenizer with rest of input
+	 * @param first Already read first value or null
+	 */
+	LazyPathsOrExpressions(Tokenizer tokenizer, String first) {
+		this.tokenizer = tokenizer;
+		this.next = first;
+	}
+	
+	/**
+	 * Is there next value?
+	 * 
+	 * @return True if its
+	 */
+	public boolean hasNext() {
+		while (next == null && !end) {
+			List<String> rest = tokenizer.skipEndOfOptions();
+			if (rest != null) {
+				remaining = rest;
+				end = true;
+				break;
+			}
+			
+			String token;
+			try {
+				token = tokenizer.nextToken();
+			} catch (OverlapingBracketsException e) {
+				end = true;
+				throw new IllegalArgumentException(e.getMessage(), e);
+			}
+			
+			if (token == null) {
+				end = true;
+			} else {
+				next = OptParser.pathOrExpressionValue(token);
+			}
+		}
+		return next != null;
+	}
+	
+	/**
+	 * Return next value.
+	 * 
+	 * @return Value
+	 */
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String ret = next;
+		next = null;
+		return ret;
+	}
+	
+	/**
+	 * Return parameters after end of options "--" (known when values are
+	 * iterated up to it).
+	 * 
+	 * @return Read-only view of parameters, empty without "--"
+	 */
+	public List<String> getRemainingArguments() {
+		return remaining;
+	}
+	
+	/**
+	 * Remove is not supported.
+	 */
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+	
+	/**
+	 * Return self (values can be iterated only once).
+	 * 
+	 * @return Iterator
+	 */
+	public Iterator<String> iterator() {
+		return this;
+	}
+	
+	/**
+	 * Return ordered spliterator of unknown size.
+	 * 
+	 * @return Spliterator
+	 */
+	public Spliterator<String> spliterator() {
+		return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+}
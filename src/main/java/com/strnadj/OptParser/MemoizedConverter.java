@@ -0,0 +1,187 @@
+package com.strnadj.OptParser;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Memoized converter - converted values are cached by raw value and shared across parses.
+ *
+ * Cache is concurrent and bounded, eviction policy is CLOCK (second chance,
+ * approximation of LRU): hit only marks entry as referenced (one lookup, no
+ * lock), full cache sweeps the ring of entries, clears marks and evicts first
+ * entry not referenced since last sweep. Insertions and evictions are
+ * serialized (misses convert first), so the bound always holds. Failed
+ * conversions and null results are not cached. Converted values should be
+ * immutable.
+ *
+ * @author strnadj
+ *
+ * @param <T> Converted type
+ */
+public class MemoizedConverter<T> implements ValueConverter<T> {
+	/** Default maximal count of cached values. */
+	public final static int DEFAULT_CACHE_SIZE = 1024;
+
+	/** Converter. */
+	private final ValueConverter<T> converter;
+
+	/** Maximal count of cached values. */
+	private final int maxSize;
+
+	/**
+	 * Cached value with reference mark.
+	 */
+	private final static class Entry<T> {
+		final String key;
+		final T value;
+
+		/** Hit since last sweep of clock hand? */
+		volatile boolean referenced;
+
+		Entry(String key, T value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/** Cached values by raw value. */
+	private final ConcurrentHashMap<String, Entry<T>> cache = new ConcurrentHashMap<String, Entry<T>>();
+
+	/** Clock ring of entries (grows up to maxSize, guarded by lock). */
+	private Entry<?> [] ring;
+	private int count = 0;
+	private int hand = 0;
+
+	/** Lock of insertions and evictions. */
+	private final Object lock = new Object();
+
+	/** Statistics. */
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * Create memoized converter.
+	 *
+	 * @param converter Converter
+	 * @param maxSize Maximal count of cached values
+	 */
+	public MemoizedConverter(ValueConverter<T> converter, int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Cache size must be positive!");
+		}
+		this.converter = converter;
+		this.maxSize = maxSize;
+		this.ring = new Entry<?>[Math.min(maxSize, 16)];
+	}
+
+	/**
+	 * Return cached or converted value.
+	 *
+	 * @param value Raw value
+	 *
+	 * @return Converted value
+	 *
+	 * @throws Exception Invalid value
+	 */
+	@Override
+	public T convert(String value) throws Exception {
+		Entry<T> entry = cache.get(value);
+		if (entry != null) {
+			// Write only when mark changes (no cache line traffic on hot entries)
+			if (!entry.referenced) {
+				entry.referenced = true;
+			}
+			hits.increment();
+			return entry.value;
+		}
+
+		misses.increment();
+		T ret = converter.convert(value);
+		if (ret != null) {
+			synchronized (lock) {
+				// Concurrent miss of same value is cached once
+				if (!cache.containsKey(value)) {
+					insert(new Entry<T>(value, ret));
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Insert entry, evict by clock when cache is full (under lock).
+	 *
+	 * @param entry New entry
+	 */
+	private void insert(Entry<T> entry) {
+		if (count < maxSize) {
+			if (count == ring.length) {
+				ring = Arrays.copyOf(ring, Math.min(maxSize, count * 2));
+			}
+			ring[count++] = entry;
+			cache.put(entry.key, entry);
+			return;
+		}
+
+		// Second chance - referenced entries are cleared and skipped
+		while (ring[hand].referenced) {
+			ring[hand].referenced = false;
+			hand = (hand + 1) % maxSize;
+		}
+		cache.remove(ring[hand].key);
+		evictions.increment();
+		ring[hand] = entry;
+		cache.put(entry.key, entry);
+		hand = (hand + 1) % maxSize;
+	}
+
+	/**
+	 * Count of values returned from cache.
+	 *
+	 * @return Hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Count of converted values.
+	 *
+	 * @return Misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Count of evicted values.
+	 *
+	 * @return Evictions
+	 */
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	/**
+	 * Count of cached values.
+	 *
+	 * @return Size
+	 */
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Remove cached values (statistics are kept).
+	 */
+	public void clear() {
+		synchronized (lock) {
+			cache.clear();
+			Arrays.fill(ring, null);
+			count = 0;
+			hand = 0;
+		}
+	}
+}
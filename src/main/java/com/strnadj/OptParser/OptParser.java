@@ -1,11 +1,16 @@
 package com.strnadj.OptParser;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import javax.management.ObjectName;
+import jdk.jfr.FlightRecorder;
+
+import com.strnadj.OptParser.events.*;
 import com.strnadj.OptParser.exceptions.*;
 
 /**
@@ -20,14 +25,20 @@ import com.strnadj.OptParser.exceptions.*;
  * (http://ruby-doc.org/stdlib-2.0.0/libdoc/optparse/rdoc/OptionParser.html)
  */
 public class OptParser {
-	/** Store options definitions in list. */
-	private Set<Option> optionsContainer = new TreeSet<Option>();
+	/** Options definitions (by id, in definition order, by short name). */
+	private OptionIndex index;
+	
+	/** Count of options of shared option set (ids from 0, never changed by parser). */
+	private int sharedCount = 0;
+	
+	/** Constraints over options (checked in one pass after parsing). */
+	private List<OptionConstraint> constraints = new ArrayList<OptionConstraint>();
 	
 	/** Store object map for quicker searching (after parsing arguments!). */
 	private Map<String, Option> optionsValues = new HashMap<String, Option>();
 	
-	/** Private data for string help methods etc.. */
-	private int maxFullNameLength  = 0;
+	/** Parameters after end of options (after parsing arguments!). */
+	private List<String> remainingArguments = Collections.emptyList();
 	
 	/** Private variable for save option (path|expr) order. */
 	private int expressionOrder = 0;
@@ -39,10 +50,22 @@ public class OptParser {
 	private String exprHelpStringRequired = "";
 	
 	/** List of required options in order row. */
-	private List<Option> exprRequiredOrder = new LinkedList<Option>();
+	private List<Option> exprRequiredOrder = new ArrayList<Option>();
 	
 	/** List of optional options in order row. */
-	private List<Option> exprOptionalOrder = new LinkedList<Option>();
+	private List<Option> exprOptionalOrder = new ArrayList<Option>();
+	
+	/** Variadic path or expression slot (in assigning order) or -1. */
+	private int variadicSlot = -1;
+	
+	/** Stage profile (null when profiling is disabled). */
+	private volatile ParseProfile profile;
+	
+	/** MBean name of profile. */
+	private ObjectName profileName;
+	
+	/** Audit log (null when disabled). */
+	private volatile AuditLog audit;
 	
 	/** Command name for help method. */
 	private String commandName;
@@ -62,7 +85,29 @@ public class OptParser {
 	/** Option - value is required. */
 	public final static int OPTION_VALUE_IS_REQUIRED = 2;
 	
-	/** Debug mode. */
+	/** Path or expression - single value. */
+	public final static int EXPRESSION_SINGLE = 1;
+	
+	/** Path or expression - any number of values. */
+	public final static int EXPRESSION_VARIADIC = 2;
+	
+	/** Constraint - exactly one of options. */
+	public final static int CONSTRAINT_EXACTLY_ONE = 1;
+	
+	/** Constraint - at most one of options (mutual exclusion). */
+	public final static int CONSTRAINT_AT_MOST_ONE = 2;
+	
+	/** Constraint - at least one of options. */
+	public final static int CONSTRAINT_AT_LEAST_ONE = 3;
+	
+	/** Constraint - first option requires all other options. */
+	public final static int CONSTRAINT_REQUIRES = 4;
+	
+	/** 
+	 * Debug mode.
+	 * @deprecated Tracing is replaced by JFR events (category OptParser), enable them by JFR.start
+	 */
+	@Deprecated
 	public final static boolean DEBUG = false;
 
 	/**
@@ -77,6 +122,19 @@ public class OptParser {
 		return new OptParser(cmdName, cmdDesc);
 	}
 	
+	/**
+	 * Factory method returns instance of OptParser with shared options.
+	 * 
+	 * @param cmdName Command name
+	 * @param cmdDesc Command description
+	 * @param options Shared option set
+	 * 
+	 * @return Instance of option parser.
+	 */
+	public static OptParser createOptionParser(String cmdName, String cmdDesc, OptionSet options) {
+		return new OptParser(cmdName, cmdDesc, options);
+	}
+	
 	
 	/**
 	 * Default constructor for option parser.
@@ -87,6 +145,21 @@ public class OptParser {
 	public OptParser(String name, String desc) {
 		this.commandName = name;
 		this.commandDescription = desc;
+		this.index = new OptionIndex(8);
+	}
+	
+	/**
+	 * Option parser referencing shared options, own options are added after them.
+	 * 
+	 * @param name Command name
+	 * @param desc Command description
+	 * @param options Shared option set
+	 */
+	public OptParser(String name, String desc, OptionSet options) {
+		this.commandName = name;
+		this.commandDescription = desc;
+		this.index = options.share();
+		this.sharedCount = this.index.count;
 	}
 	
 	/**
@@ -101,6 +174,21 @@ public class OptParser {
 	 * @return OptionParser
 	 */
 	public OptParser addOption(char shortName, String fullName, int type, String defaultValue, String description) {
+		return addOption((int) shortName, fullName, type, defaultValue, description, OptParser.OPTION_NO_VALUE);
+	}
+	
+	/**
+	 * Add option with short name as code point (ex. emoji), return self for fluent interface.
+	 * 
+	 * @param shortName Shortcut code point
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value
+	 * @param description Description
+	 * 
+	 * @return OptionParser
+	 */
+	public OptParser addOption(int shortName, String fullName, int type, String defaultValue, String description) {
 		return addOption(shortName, fullName, type, defaultValue, description, OptParser.OPTION_NO_VALUE);
 	}
 	
@@ -117,6 +205,21 @@ public class OptParser {
 	 * @return OptionParser
 	 */
 	public OptParser addOptionRequiredValue(char shortName, String fullName, int type, String defaultValue, String description) {
+		return addOption((int) shortName, fullName, type, defaultValue, description, OptParser.OPTION_VALUE_IS_REQUIRED);
+	}
+	
+	/**
+	 * Create option with required value and short name as code point.
+	 * 
+	 * @param shortName Short name code point
+	 * @param fullName Full name 'directories'
+	 * @param type Type Required / Optional
+	 * @param defaultValue Default value (when value is not present)
+	 * @param description Command descritpion
+	 * 
+	 * @return OptionParser
+	 */
+	public OptParser addOptionRequiredValue(int shortName, String fullName, int type, String defaultValue, String description) {
 		return addOption(shortName, fullName, type, defaultValue, description, OptParser.OPTION_VALUE_IS_REQUIRED);
 	}
 	
@@ -133,16 +236,77 @@ public class OptParser {
 	 * @return Option parser
 	 */
 	public OptParser addOption(char shortName, String fullName, int type, String defaultValue, String description, int valueType) {
-		optionsContainer.add(
-				new Option(shortName, fullName, defaultValue, type, description, valueType)
-			);
-			
-			// Count variables of lenght for output
-			if (fullName.length() > maxFullNameLength) {
-				maxFullNameLength = fullName.length();
-			}
-			
-			return this;		
+		return addOption((int) shortName, fullName, type, defaultValue, description, valueType);
+	}
+	
+	/**
+	 * Add option with short name as code point.
+	 * 
+	 * @param shortName Shortcut code point
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value
+	 * @param description Description
+	 * @param valueType Value type
+	 * 
+	 * @return Option parser
+	 */
+	public OptParser addOption(int shortName, String fullName, int type, String defaultValue, String description, int valueType) {
+		registerOption(new Option(shortName, fullName, defaultValue, type, description, valueType));
+		
+		return this;
+	}
+	
+	/**
+	 * Add option and return its typed key (values are read by key from parse result).
+	 * 
+	 * @param shortName Shortcut
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value
+	 * @param description Description
+	 * @param valueType Value type
+	 * 
+	 * @return Option key
+	 */
+	public OptionKey<String> addOptionKey(char shortName, String fullName, int type, String defaultValue, String description, int valueType) {
+		Option o = new Option((int) shortName, fullName, defaultValue, type, description, valueType);
+		registerOption(o);
+		return new OptionKey<String>(o, false);
+	}
+	
+	/**
+	 * Add option with required value converted by memoized converter and return its typed key.
+	 * 
+	 * @param shortName Shortcut
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value (converted when option is not given)
+	 * @param description Description
+	 * @param converter Converter (ex. Duration::parse)
+	 * 
+	 * @return Option key
+	 */
+	public <T> OptionKey<T> addOptionKey(char shortName, String fullName, int type, String defaultValue, String description, ValueConverter<T> converter) {
+		Option o = new Option((int) shortName, fullName, defaultValue, type, description, OptParser.OPTION_VALUE_IS_REQUIRED);
+		registerOption(o);
+		addConverter(fullName, converter);
+		return new OptionKey<T>(o, true);
+	}
+	
+	/**
+	 * Return key of defined option, path or expression (raw string values).
+	 * 
+	 * @param fullName Full name
+	 * 
+	 * @return Option key
+	 */
+	public OptionKey<String> getOptionKey(String fullName) {
+		Option o = getOptionByFullName(fullName);
+		if (o == null) {
+			throw new IllegalArgumentException(String.format("Command: %s - key of undefined option %s!", this.commandName, fullName));
+		}
+		return new OptionKey<String>(o, false);
 	}
 	
 	/**
@@ -156,21 +320,269 @@ public class OptParser {
 	 * @return Option parser instance
 	 */
 	public OptParser addPathOrExpression(String fullName, int type, String defaultValue, String description) {
-		Option o = new Option(fullName, type, defaultValue, expressionOrder++, description);
-		optionsContainer.add(o);
+		return addPathOrExpression(fullName, type, defaultValue, description, OptParser.EXPRESSION_SINGLE);
+	}
+	
+	/**
+	 * Add path or expression with arity, variadic path or expression takes
+	 * any number of values for example cp [src...] [dst] (only one per parser).
+	 * 
+	 * @param fullName Full name
+	 * @param type Optional or required
+	 * @param defaultValue Default value
+	 * @param description Description
+	 * @param arity Single or variadic
+	 * 
+	 * @return Option parser instance
+	 */
+	public OptParser addPathOrExpression(String fullName, int type, String defaultValue, String description, int arity) {
+		boolean variadic = arity == OptParser.EXPRESSION_VARIADIC;
+		if (variadic && variadicSlot != -1) {
+			throw new IllegalArgumentException(String.format("Command: %s - only one variadic path or expression is allowed!", this.commandName));
+		}
+		
+		Option o = new Option(fullName, type, defaultValue, expressionOrder++, description, variadic);
+		registerOption(o);
+		
+		String suffix = variadic ? "..." : "";
 		
-		// Helper string?!
+		// Helper string?! (StringBuilder, concatenation would bootstrap invokedynamic on cold start)
 		if (type == OptParser.REQUIRED) {
+			// Variadic slot is moved by required items added later
+			if (variadic) {
+				variadicSlot = exprRequiredOrder.size();
+			} else if (variadicSlot != -1 && !getExpressionSlot(variadicSlot).isRequired()) {
+				variadicSlot++;
+			}
 			exprRequiredOrder.add(o);
-			exprHelpStringRequired += "\"" + fullName + "\" ";
+			exprHelpStringRequired = new StringBuilder(exprHelpStringRequired).append('"').append(fullName).append('"').append(suffix).append(' ').toString();
 		} else {
+			if (variadic) {
+				variadicSlot = exprRequiredOrder.size() + exprOptionalOrder.size();
+			}
 			exprOptionalOrder.add(o);
-			exprHelpStringOptional += "[" + fullName + "] ";
+			exprHelpStringOptional = new StringBuilder(exprHelpStringOptional).append('[').append(fullName).append(suffix).append("] ").toString();
+		}
+		
+		return this;
+	}
+	
+	
+	/**
+	 * Add constraint over defined options (by full names), for example
+	 * exactly one of --json/--csv/--xml. CONSTRAINT_REQUIRES takes the option
+	 * first and then options it requires (same as addRequires).
+	 * 
+	 * @param type CONSTRAINT_EXACTLY_ONE, CONSTRAINT_AT_MOST_ONE, CONSTRAINT_AT_LEAST_ONE or CONSTRAINT_REQUIRES
+	 * @param fullNames Full names of options
+	 * 
+	 * @return Option parser instance
+	 */
+	public OptParser addConstraint(int type, String... fullNames) {
+		String description;
+		switch (type) {
+		case OptParser.CONSTRAINT_EXACTLY_ONE:
+			description = "exactly one of options is required";
+			break;
+		case OptParser.CONSTRAINT_AT_MOST_ONE:
+			description = "options are mutually exclusive";
+			break;
+		case OptParser.CONSTRAINT_AT_LEAST_ONE:
+			description = "at least one of options is required";
+			break;
+		case OptParser.CONSTRAINT_REQUIRES:
+			if (fullNames.length < 2) {
+				throw new IllegalArgumentException(String.format("Command: %s - requires constraint needs option and required options!", this.commandName));
+			}
+			return addRequires(fullNames[0], Arrays.copyOfRange(fullNames, 1, fullNames.length));
+		default:
+			throw new IllegalArgumentException(String.format("Command: %s - unknown constraint type %d!", this.commandName, type));
+		}
+		
+		constraints.add(new OptionConstraint(type, constraintMask(fullNames), null,
+				description + ": " + joinNames(fullNames)));
+		
+		return this;
+	}
+	
+	/**
+	 * Add constraint - when option is filled, all required options must be filled too.
+	 * 
+	 * @param fullName Full name of option
+	 * @param requiredNames Full names of required options
+	 * 
+	 * @return Option parser instance
+	 */
+	public OptParser addRequires(String fullName, String... requiredNames) {
+		constraints.add(new OptionConstraint(OptParser.CONSTRAINT_REQUIRES, constraintMask(requiredNames), constraintMask(fullName),
+				fullName + " requires options: " + joinNames(requiredNames)));
+		
+		return this;
+	}
+	
+	/**
+	 * Register value converter with default cache size.
+	 * 
+	 * @param fullName Full name of option
+	 * @param converter Converter (ex. Duration::parse)
+	 * 
+	 * @return Option parser instance
+	 */
+	public <T> OptParser addConverter(String fullName, ValueConverter<T> converter) {
+		return addConverter(fullName, converter, MemoizedConverter.DEFAULT_CACHE_SIZE);
+	}
+	
+	/**
+	 * Register value converter - converted values are cached by raw value
+	 * and shared by all parses.
+	 * 
+	 * @param fullName Full name of option
+	 * @param converter Converter
+	 * @param cacheSize Maximal count of cached values
+	 * 
+	 * @return Option parser instance
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> OptParser addConverter(String fullName, ValueConverter<T> converter, int cacheSize) {
+		Option o = getOptionByFullName(fullName);
+		if (o == null) {
+			throw new IllegalArgumentException(String.format("Command: %s - converter for undefined option %s!", this.commandName, fullName));
+		}
+		if (o.getId() < sharedCount) {
+			throw new IllegalArgumentException(String.format("Command: %s - option %s is shared, add converter to option set!", this.commandName, fullName));
+		}
+		o.setConverter(converter instanceof MemoizedConverter ? (MemoizedConverter<T>) converter : new MemoizedConverter<T>(converter, cacheSize));
+		
+		return this;
+	}
+	
+	/**
+	 * Return memoized converter of option (statistics).
+	 * 
+	 * @param fullName Full name of option
+	 * 
+	 * @return Converter or null
+	 */
+	public MemoizedConverter<?> getConverter(String fullName) {
+		Option o = getOptionByFullName(fullName);
+		return o == null ? null : o.getConverter();
+	}
+	
+	/**
+	 * Create mask from defined option names.
+	 * 
+	 * @param fullNames Full names of options
+	 * 
+	 * @return Mask
+	 */
+	private long[] constraintMask(String... fullNames) {
+		long[] mask = new long[index.requiredMask.length];
+		for (String name : fullNames) {
+			Option o = getOptionByFullName(name);
+			if (o == null) {
+				throw new IllegalArgumentException(String.format("Command: %s - constraint over undefined option %s!", this.commandName, name));
+			}
+			mask[o.getId() >>> 6] |= 1L << o.getId();
+		}
+		return mask;
+	}
+	
+	/**
+	 * Join names by comma.
+	 * 
+	 * @param names Names
+	 * 
+	 * @return Joined names
+	 */
+	private static String joinNames(String... names) {
+		StringBuilder ret = new StringBuilder();
+		for (String name : names) {
+			if (ret.length() > 0) {
+				ret.append(", ");
+			}
+			ret.append(name);
+		}
+		return ret.toString();
+	}
+	
+	/**
+	 * Assign dense id to option and index it (shared definitions are copied first).
+	 * 
+	 * @param o Option
+	 */
+	private void registerOption(Option o) {
+		if (index.shared) {
+			index = index.copy();
+		}
+		index.add(o);
+	}
+	
+	/**
+	 * Enable stage profiling and register profile as platform MBean
+	 * com.strnadj.OptParser:type=ParseProfile,name=(name), registered
+	 * profile with same name is replaced.
+	 * 
+	 * @param name Parser name
+	 * 
+	 * @return Option parser instance
+	 */
+	public synchronized OptParser enableProfiling(String name) {
+		disableProfiling();
+		
+		ParseProfile p = new ParseProfile();
+		this.profileName = p.register(name);
+		this.profile = p;
+		
+		return this;
+	}
+	
+	/**
+	 * Disable stage profiling and unregister MBean (unless other parser
+	 * took its name over).
+	 * 
+	 * @return Option parser instance
+	 */
+	public synchronized OptParser disableProfiling() {
+		ParseProfile p = this.profile;
+		this.profile = null;
+		if (p != null) {
+			p.unregister(profileName);
+			profileName = null;
 		}
 		
 		return this;
 	}
 	
+	/**
+	 * Return stage profile.
+	 * 
+	 * @return Profile or null when profiling is disabled
+	 */
+	public ParseProfile getProfile() {
+		return this.profile;
+	}
+	
+	/**
+	 * Set audit log - every parse (parseArguments, parse, parseCollectingErrors,
+	 * parseArgumentsLazily) is recorded asynchronously, log can be shared by more parsers.
+	 * 
+	 * @param audit Audit log or null to disable
+	 * 
+	 * @return Option parser instance
+	 */
+	public OptParser setAuditLog(AuditLog audit) {
+		this.audit = audit;
+		return this;
+	}
+	
+	/**
+	 * Return audit log.
+	 * 
+	 * @return Audit log or null
+	 */
+	public AuditLog getAuditLog() {
+		return this.audit;
+	}
 	
 	/**
 	 * Return command help created from options.
@@ -178,64 +590,84 @@ public class OptParser {
 	 * @return Help string
 	 */
 	public String getHelp() {
-		String ret = "";
+		ParseProfile profile = this.profile;
+		if (profile == null) {
+			return buildHelp();
+		}
+		
+		long start = System.nanoTime();
+		try {
+			return buildHelp();
+		} finally {
+			profile.record(ParseProfile.STAGE_HELP, start);
+		}
+	}
+	
+	/**
+	 * Build help text.
+	 * 
+	 * @return Help
+	 */
+	private String buildHelp() {
+		StringBuilder ret = new StringBuilder(256);
 		
 		// name + description
-		ret += String.format("Command: %s - %s\n", this.commandName, this.commandDescription);
+		ret.append("Command: ").append(this.commandName).append(" - ").append(this.commandDescription).append('\n');
 		
 		// Usage?!
 		// Better formmating
+		ret.append("Usage: ").append(this.commandName).append(" [options] ").append(exprHelpStringRequired);
 		if (exprHelpStringRequired.length() > 0) {
-			exprHelpStringRequired += " ";
+			ret.append(' ');
 		}
-		ret += String.format("Usage: %s [options] %s%s \n\n", this.commandName, exprHelpStringRequired, exprHelpStringOptional);
+		ret.append(exprHelpStringOptional).append(" \n\n");
 		
 		// Required parameters
-		String required = "";
+		StringBuilder required = new StringBuilder();
 		
 		// Optional parameters
-		String optional = "";
+		StringBuilder optional = new StringBuilder();
 		
-		for (Option o : optionsContainer) {
+		OptionIndex index = this.index;
+		for (int n = 0; n < index.sortedCount; n++) {
+			Option o = index.sorted[n];
+			
 			// Params
 			if(o.POSITION != -1) {
 				continue;
 			}
 			
+			StringBuilder target = (o.getType() == OptParser.OPTIONAL) ? optional : required;
+			target.append("\t-").appendCodePoint(o.getShortNameCodePoint()).append(", --").append(o.getFullName());
+			
 			// Count necessary spaces for pretty output!
 			// -(char), --(string){spaces} - 3 + 3 + fullLenght
 			// {spaces} is variable maxFullNameLength + 4
-			int spaces = (maxFullNameLength + 4) - o.getFullName().length();
-			String freeSpaces = "";
+			int spaces = (index.maxFullNameLength + 4) - o.getFullName().length();
 			for (int i = 0; i < spaces; i++) {
-				freeSpaces += " ";
+				target.append(' ');
 			}
 			
-			// Prepare value is required?!
-			String value = "";
-			if (o.isValueRequired()) {
-				value = "(Value is required!!)";
-			}
+			target.append(o.getDescription()).append(' ');
 			
-			// Return
-			if (o.getType() == OptParser.OPTIONAL) {
-				optional += String.format("\t-%c, --%s%s%s %s\n", o.getShortName(), o.getFullName(), freeSpaces, o.getDescription(), value);
-			} else {
-				required += String.format("\t-%c, --%s%s%s %s\n", o.getShortName(), o.getFullName(), freeSpaces, o.getDescription(), value);
+			// Value is required?!
+			if (o.isValueRequired()) {
+				target.append("(Value is required!!)");
 			}
+			target.append('\n');
 		}
 		
 		// Merge with return string
 		if (required.length() > 0) {
-			ret += "Required options:\n"+required+"\n";
+			ret.append("Required options:\n").append(required).append('\n');
 		}
 		
 		// Optional options
 		if (optional.length() > 0) {
-			ret += "Optional options:\n"+optional+"\n";
+			ret.append("Optional options:\n").append(optional).append('\n');
 		}
 		
-		return ret;
+		return ret.toString();
 	}
 
 	/** Public method for parsing from collection of strings
@@ -253,345 +685,751 @@ public class OptParser {
 	 * @throws Parsing exception
 	 */
 	public void parseArguments(List<String>parameters) throws Exception {
-		String [] arr = new String[parameters.size()];
-		for (int i = 0; i < parameters.size(); i++) {
-			arr[i] = parameters.get(i);
-		}
-		parseArguments(arr);
+		parseArguments(parameters.toArray(new String[parameters.size()]));
 	}
 	
 	/** Parse arguments from command line
 	 *  - work with array is much more faster!
+	 *  - stages are recorded as JFR events (com.strnadj.OptParser.*), event
+	 *    classes are not touched until flight recorder is initialized (cold start)
 	 *  @params parameters Parameters
 	 *  @throws Parsing exception
 	 */
 	public void parseArguments(String [] parameters) throws Exception {
-		/** Concatenate parameters - single and double quoted spaces etc */
-		parameters = concatenateParameters(parameters);
-		
-		// Method is designed to throw exception when is catch undefined attribute!
-		// Non-optional items -  fill with required parameters, if at the end
-		// of parsing there is some items - its bad and required parameters are missing
-		Set<String> nonOptionalItems = this.getRequiredParameters();
-		// Every time when parse some required option, this option are removed from set
-		
-		// Get count of parameters
-		int size = parameters.length;
-	
-		// Is there HELP option?!
-		boolean help = false;
-		for (int i = 0; i < size; i++) {
-			String parameter = parameters[i];
-			
-			// Choiced help option - ignore warnings about missing properties!
-			if (parameter.equals("-h") || parameter.equals("--help")) {
-				help = true;
-				
-				if (DEBUG) {
-					System.out.println("DEBUG: Help parameter found!");
-				}
-			}
+		ParseResult result = new ParseResult(this, index.requiredMask.length, parameters.length);
+		try {
+			parse(parameters, result);
+		} finally {
+			// Store (also partial) result in options
+			applyResult(result);
+		}
+	}
+	
+	/** Parse arguments into new result, options definitions are not changed
+	 *  - parser can be shared by more threads
+	 *  - parameters after "--" are not parsed (see ParseResult.getRemainingArguments)
+	 *  @params parameters Parameters
+	 *  @throws Parsing exception
+	 *  @return Parse result
+	 */
+	public ParseResult parse(String [] parameters) throws Exception {
+		ParseResult result = new ParseResult(this, index.requiredMask.length, parameters.length);
+		parse(parameters, result);
+		return result;
+	}
+	
+	/**
+	 * Parse arguments into result and record failure.
+	 * 
+	 * @param parameters Parameters
+	 * @param result Parse result
+	 * 
+	 * @throws Exception Parsing exception
+	 */
+	private void parse(String [] parameters, ParseResult result) throws Exception {
+		ParseFailureEvent failure = null;
+		if (FlightRecorder.isInitialized()) {
+			failure = new ParseFailureEvent();
+			failure.begin();
 		}
 		
-		// Debug
-		if (DEBUG) {
-			System.out.println("OptParser debug:\nDEBUG: Parameters "+Arrays.toString(parameters));
+		AuditLog audit = this.audit;
+		try {
+			parseTokens(parameters, failure, result, null);
+		} catch (Exception e) {
+			if (audit != null) {
+				audit.record(this, parameters, result, e);
+			}
+			if (failure != null) {
+				failure.end();
+				if (failure.shouldCommit()) {
+					failure.commandName = this.commandName;
+					failure.optionCount = index.count;
+					failure.exceptionClass = e.getClass().getName();
+					failure.message = e.getMessage();
+					failure.commit();
+				}
+			}
+			throw e;
+		}
+		if (audit != null) {
+			audit.record(this, parameters, result, null);
 		}
+	}
+	
+	/** Parse arguments without throwing - every problem is collected
+	 *  - bad token is skipped and parsing continues with next one
+	 *  - unclosed quotes end parsing (rest can't be tokenized)
+	 *  @params parameters Parameters
+	 *  @return Partial result and problems with token positions
+	 */
+	public ParseDiagnostics parseCollectingErrors(String [] parameters) {
+		ParseResult result = new ParseResult(this, index.requiredMask.length, parameters.length);
+		ParseDiagnostics diagnostics = new ParseDiagnostics(result);
 		
-		// Path or expressions on the end!
-		List<String> poe = new LinkedList<String>();
+		// Event only carries token count, it is never committed
+		ParseFailureEvent failure = FlightRecorder.isInitialized() ? new ParseFailureEvent() : null;
+		try {
+			parseTokens(parameters, failure, result, diagnostics);
+		} catch (Exception e) {
+			// Collecting mode reports instead of throwing
+			diagnostics.add(-1, null, e);
+		}
 		
-		// Start parsing!
+		AuditLog audit = this.audit;
+		if (audit != null) {
+			audit.record(this, parameters, result, diagnostics.hasErrors() ? diagnostics.getDiagnostics().get(0).getError() : null);
+		}
+		return diagnostics;
+	}
+	
+	/**
+	 * Format exception message (profiled as exception formatting).
+	 * 
+	 * @param format Format
+	 * @param args Arguments
+	 * 
+	 * @return Message
+	 */
+	private String formatMessage(String format, Object... args) {
+		ParseProfile profile = this.profile;
+		if (profile == null) {
+			return String.format(format, args);
+		}
+		
+		long start = System.nanoTime();
+		try {
+			return String.format(format, args);
+		} finally {
+			profile.record(ParseProfile.STAGE_EXCEPTION_FORMATTING, start);
+		}
+	}
+	
+	/**
+	 * Throw exception or add it to diagnostics when collecting.
+	 * 
+	 * @param diagnostics Diagnostics or null (throw)
+	 * @param position Token index
+	 * @param token Token or null
+	 * @param e Exception
+	 * 
+	 * @throws Exception Given exception when not collecting
+	 */
+	private static void report(ParseDiagnostics diagnostics, int position, String token, Exception e) throws Exception {
+		if (diagnostics == null) {
+			throw e;
+		}
+		diagnostics.add(position, token, e);
+	}
+	
+	/**
+	 * Tokenize and parse arguments.
+	 * 
+	 * @param parameters Parameters
+	 * @param failure Failure event (token count is updated) or null when not recording
+	 * @param result Parse result
+	 * @param diagnostics Problems are collected here, null = throw on first one
+	 * 
+	 * @throws Exception Parsing exception
+	 */
+	private void parseTokens(String [] parameters, ParseFailureEvent failure, ParseResult result, ParseDiagnostics diagnostics) throws Exception {
+		int optionCount = index.count;
+		boolean recording = failure != null;
+		
+		// End of options - rest is passed through as view, it is not tokenized
+		int end = Tokenizer.endOfOptions(parameters);
+		if (end != -1) {
+			result.setRemainingArguments(Collections.unmodifiableList(Arrays.asList(parameters).subList(end + 1, parameters.length)));
+			parameters = Arrays.copyOf(parameters, end);
+		}
+		
+		/** Concatenate parameters - single and double quoted spaces etc */
+		TokenizeEvent tokenize = null;
+		if (recording) {
+			tokenize = new TokenizeEvent();
+			tokenize.begin();
+		}
+		ParseProfile profile = this.profile;
+		long start = profile != null ? System.nanoTime() : 0;
+		try {
+			parameters = concatenateParameters(parameters, diagnostics);
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_TOKENIZE, start);
+			}
+		}
+		if (recording) {
+			tokenize.end();
+			if (tokenize.shouldCommit()) {
+				tokenize.set(this.commandName, parameters.length, optionCount);
+				tokenize.commit();
+			}
+			failure.tokenCount = parameters.length;
+		}
+		
+		// Method is designed to throw exception when is catch undefined attribute!
+		// Every parsed option sets its bit in result, at the end of parsing bits are
+		// compared with required mask - missing bits are missing required options
+		
+		// Get count of parameters
+		int size = parameters.length;
+	
+		// Is there HELP option?!
+		start = profile != null ? System.nanoTime() : 0;
+		boolean help = false;
 		for (int i = 0; i < size; i++) {
-			// Always start with empty option! (for save on method end)
-			Option o = null;
-			
-			// Get parameter
 			String parameter = parameters[i];
 			
-			// What kind of parameter is it?!
-			if (isOption(parameter)) {
-				// Get option by parameter!
-				o = getOptionByParameter(parameter);
-				
-				// Throw exception of undefined option!
-				if (o == null) {
-					if (DEBUG) {
-						System.out.println(String.format("ERROR: Command: %s unexcepted option %s", this.commandName, parameter ));
+			// Choiced help option - ignore warnings about missing properties!
+			if (parameter.equals("-h") || parameter.equals("--help")) {
+				help = true;
+			}
+		}
+		if (profile != null) {
+			profile.record(ParseProfile.STAGE_HELP_SCAN, start);
+		}
+		
+		// Path or expressions on the end! (never more than parameters)
+		String [] poe = new String[size];
+		int [] poePositions = diagnostics == null ? null : new int[size];
+		int poeCount = 0;
+		
+		// Start parsing!
+		OptionResolveEvent resolve = null;
+		if (recording) {
+			resolve = new OptionResolveEvent();
+			resolve.begin();
+		}
+		start = profile != null ? System.nanoTime() : 0;
+		try {
+			for (int i = 0; i < size; i++) {
+				// Get parameter
+				String parameter = parameters[i];
+			
+				// What kind of parameter is it?!
+				if (isOption(parameter)) {
+					// Get option by parameter! (unknown is skipped when collecting)
+					Option o;
+					try {
+						o = resolveOption(parameter);
+					} catch (UnexpectedOption e) {
+						report(diagnostics, i, parameter, e);
+						continue;
 					}
-					
-					throw new UnexpectedOption(String.format("Command: %s unexcepted option %s", this.commandName, parameter ));
-				}
+					String value = null;
 				
-				// Debug
-				if (DEBUG) {
-					System.out.println("DEBUG: found parameter "+o.getFullName());
-				}
-				
-				// Set filled! 
-				o.setFilled();				
-				
-				// Required value?!
-				if (o.isValueRequired()) {
-					// Now we've got option, is there a value? on next index?!
-					String nextParameter = null;
-					if ((i+1) < size) {
-						nextParameter = parameters[i+1];
-					} 
-					
+					// Required value?!
+					if (o.isValueRequired()) {
+						// Now we've got option, is there a value? on next index?!
+						String nextParameter = null;
+						if ((i+1) < size) {
+							nextParameter = parameters[i+1];
+						} 
 					
-					// Throw new exception when next string is null (not exist) or next string is option!!!
-					if (nextParameter == null || isOption(nextParameter)) {
-						if (DEBUG) {
-							System.out.println(String.format("DEBUG: Command: %s - value: %c(%s) is required!", this.commandName, o.getShortName(), o.getFullName()));
+						ValueBindingEvent binding = null;
+						if (recording) {
+							binding = new ValueBindingEvent();
+							binding.begin();
+						}
+						try {
+							value = bindValue(o, nextParameter);
+						} catch (MissingOptionValue e) {
+							// Next option is parsed, option stays unfilled
+							report(diagnostics, i, parameter, e);
+							continue;
+						} finally {
+							if (recording) {
+								binding.end();
+								if (binding.shouldCommit()) {
+									binding.set(this.commandName, size, optionCount);
+									binding.commit();
+								}
+							}
 						}
-						
-						// End with exception
-						throw new MissingOptionValue(String.format("Command: %s - value: %c(%s) is required!", this.commandName, o.getShortName(), o.getFullName()));
-					}
-					
-					// Set next parameter as value!
-					o.setValue(nextParameter);
-
-					if (DEBUG) {
-						System.out.println("DEBUG: Set value: "+nextParameter+" to command: "+o.getFullName());
-					}					
 					
-					// Skip next parameter! (it is value for this option)
-					i = i + 1;
-				}
+						// Skip next parameter! (it is value for this option)
+						i = i + 1;
+					}
 				
-				// Now if option is required remove from required list!
-				if (o.isRequired()) {
-					nonOptionalItems.remove(o.getFullName());
-				}
-			} else {
-				// It is path or expr option! Parse different!!
-				poe.add(parameter);
+					// Set filled! (after value is bound)
+					result.set(o.getId(), value);
+				} else {
+					// It is path or expr option! Parse different!!
+					String pom = pathOrExpressionValue(parameter);
 				
-				if (DEBUG) {
-					System.out.println("DEBUG: Add: '"+parameter+"' to path or expression");
+					// Skip when there is no string!
+					if (pom == null) {
+						continue;
+					}
+				
+					if (poePositions != null) {
+						poePositions[poeCount] = i;
+					}
+					poe[poeCount++] = pom;
 				}
 			}
-			
-			// If there is an option save it!
-			if (o != null) {
-				optionsValues.put(o.getFullName(), o);
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_OPTION_LOOKUP, start);
 			}
 		}
-		
-		if (DEBUG) {
-			System.out.println("DEBUG: Merge POE size:"+poe.size());
+		if (recording) {
+			resolve.end();
+			if (resolve.shouldCommit()) {
+				resolve.set(this.commandName, size, optionCount);
+				resolve.commit();
+			}
 		}
 		
-		// *************************************** //
-		// Parse path or expressions parameters!!! //
-		// *************************************** //
-		// First concatenate parameters! (path \/s, ' and " open)
-		// when there is opened " or ' - throws OptParser exception
-		Map<Integer, String> poeParsed = new HashMap<Integer, String>();
-		int actPoeIndex = 0;
-				
-		// Iterate through paths or expressions
-		for (int i = 0; i < poe.size(); i++) {
-			String pom = poe.get(i).trim();
-
-			// Skip when there is no string!
-			if (pom.length() == 0) {
-				continue;
+		// Assign paths or expressions to definitions
+		PositionalAssignmentEvent positional = null;
+		if (recording) {
+			positional = new PositionalAssignmentEvent();
+			positional.begin();
+		}
+		start = profile != null ? System.nanoTime() : 0;
+		try {
+			assignPathsOrExpressions(poe, poePositions, poeCount, result, diagnostics);
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_POSITIONAL_ASSIGNMENT, start);
 			}
-			
-			if (DEBUG) {
-				System.out.println("Opt parser find POE: "+i+" - "+pom);
+		}
+		if (recording) {
+			positional.end();
+			if (positional.shouldCommit()) {
+				positional.set(this.commandName, poeCount, optionCount);
+				positional.commit();
 			}
-			
-			// Get param
-			String param;
-			if (pom.charAt(0) == '\'' || pom.charAt(0) == '"') {
-				param = pom.substring(1, pom.length() - 1);
-			} else {
-				param = pom;
+		}
+		
+		// There is some required parameters left! (help is reported once)
+		start = profile != null ? System.nanoTime() : 0;
+		try {
+			checkRequired(result.filled, help, diagnostics);
+			if (!help || !hasMissing(result.filled)) {
+				checkConstraints(result.filled, help, diagnostics);
 			}
-			
-			if (DEBUG) {
-				System.out.println("Find parameters: "+param);
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_VALIDATION, start);
 			}
-			
-			// Set
-			poeParsed.put(actPoeIndex, param);
-			actPoeIndex++;
 		}
-		
-		if (DEBUG) {
-			System.out.println("DEBUG: Merge POE END");
+	}
+	
+	/**
+	 * Store result in options definitions (parseArguments compatibility),
+	 * values of previous parse are forgotten.
+	 * 
+	 * @param result Parse result
+	 */
+	private void applyResult(ParseResult result) {
+		if (!optionsValues.isEmpty()) {
+			// Not touched on first parse (cold start)
+			for (Option o : optionsValues.values()) {
+				o.reset();
+			}
+			optionsValues.clear();
 		}
-				
 		
-		// Set for items!
-		int posRequired = 0;
-		int posOptional = 0;
-		
-		// Try to assing values to options!
-		for(int i = 0; i < actPoeIndex; i++) {
-			String param = (String) poeParsed.get(i);
-			// Try required first
-			if (posRequired < exprRequiredOrder.size()) {
-				// Get option
-				Option o = exprRequiredOrder.get(posRequired);
+		remainingArguments = result.getRemainingArguments();
+		long[] filled = result.filled;
+		for (int word = 0; word < filled.length; word++) {
+			long bits = filled[word];
+			while (bits != 0) {
+				int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+				bits &= bits - 1;
 				
-				// Set value
-				o.setValue(param);
+				Option o = index.byId[id];
+				if (id < sharedCount) {
+					// Shared definition is not changed, parser keeps own copy
+					Option own = optionsValues.get(o.getFullName());
+					o = own != null ? own : o.copy();
+				}
+				Object value = result.raw(id);
+				if (value instanceof List) {
+					@SuppressWarnings("unchecked")
+					List<String> values = (List<String>) value;
+					o.setValues(values);
+				} else if (value != null) {
+					o.setValue((String) value);
+				}
 				o.setFilled();
-				
-				// Add to option values!
 				optionsValues.put(o.getFullName(), o);
+			}
+		}
+	}
+	
+	/**
+	 * Parse options eagerly and return trailing paths or expressions lazily
+	 * - tokens are created on demand when iterator is consumed.
+	 * 
+	 * Options must precede paths or expressions, after the first path or
+	 * expression every token is a value (xargs style). Last path or expression
+	 * (in assigning order) must be variadic, it gets the lazy values.
+	 * Help is recognized only between options. Parsing ends at "--" (found
+	 * incrementally), parameters after it are not tokenized - when it follows
+	 * variadic values they are returned by LazyPathsOrExpressions.getRemainingArguments.
+	 * 
+	 * @param parameters Parameters
+	 * 
+	 * @throws Exception Parsing exception
+	 * 
+	 * @return Lazy values of variadic path or expression
+	 */
+	public LazyPathsOrExpressions parseArgumentsLazily(String [] parameters) throws Exception {
+		int slots = exprRequiredOrder.size() + exprOptionalOrder.size();
+		if (variadicSlot == -1 || variadicSlot != slots - 1) {
+			throw new IllegalStateException(String.format("Command: %s - lazy parsing requires trailing variadic path or expression!", this.commandName));
+		}
+		
+		Tokenizer tokenizer = new Tokenizer(parameters);
+		ParseResult result = new ParseResult(this, index.requiredMask.length, 8);
+		AuditLog audit = this.audit;
+		LazyPathsOrExpressions values;
+		try {
+			values = parseLazily(tokenizer, result);
+		} catch (Exception e) {
+			if (audit != null) {
+				audit.record(this, parameters, result, e, true);
+			}
+			throw e;
+		} finally {
+			applyResult(result);
+		}
+		if (audit != null) {
+			audit.record(this, parameters, result, null, true);
+		}
+		return values;
+	}
+	
+	/**
+	 * Parse options and fixed paths or expressions into result.
+	 * 
+	 * @param tokenizer Tokenizer
+	 * @param result Parse result
+	 * 
+	 * @throws Exception Parsing exception
+	 * 
+	 * @return Lazy values of variadic path or expression
+	 */
+	private LazyPathsOrExpressions parseLazily(Tokenizer tokenizer, ParseResult result) throws Exception {
+		boolean help = false;
+		
+		// Options first (tokenizing is profiled as option lookup, it is interleaved)
+		ParseProfile profile = this.profile;
+		long start = profile != null ? System.nanoTime() : 0;
+		String parameter;
+		String first = null;
+		List<String> rest;
+		try {
+			while ((rest = tokenizer.skipEndOfOptions()) == null && (parameter = tokenizer.nextToken()) != null) {
+				if (!isOption(parameter)) {
+					first = pathOrExpressionValue(parameter);
+					if (first == null) {
+						continue;
+					}
+					break;
+				}
 				
-				// Remove from required items!
-				nonOptionalItems.remove(o.getFullName());
-				
-				// Move pos required
-				posRequired++;
-			} else if(posOptional < exprOptionalOrder.size()) {
-				// Get option
-				Option o = exprOptionalOrder.get(posOptional);
-				
-				// Set value
-				o.setValue(param);
-				o.setFilled();
+				if (parameter.equals("-h") || parameter.equals("--help")) {
+					help = true;
+				}
 				
-				// Add to option values
-				optionsValues.put(o.getFullName(), o);
+				Option o = resolveOption(parameter);
+				String value = null;
+				if (o.isValueRequired()) {
+					value = bindValue(o, tokenizer.nextToken());
+				}
 				
-				// Inc
-				posOptional++;
-			} else {
-				// Unknown attribute!
-				throw new UnknownAttribute(String.format("Unknown attribute: \"%s\" for command: %s\n", param, this.commandName));
+				result.set(o.getId(), value);
+			}
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_OPTION_LOOKUP, start);
 			}
 		}
 		
-		// There is some required parameters left!
-		if (nonOptionalItems.size() > 0) {
-			String options = "";
-			for(String s : nonOptionalItems) {
-				options = s+", ";
+		// Fixed paths or expressions before variadic
+		start = profile != null ? System.nanoTime() : 0;
+		LazyPathsOrExpressions values = new LazyPathsOrExpressions(tokenizer, first);
+		try {
+			for (int i = 0; i < variadicSlot && values.hasNext(); i++) {
+				result.set(getExpressionSlot(i).getId(), values.next());
 			}
 			
-			options = options.substring(0, options.length() - 2);
-			
-			// Throw exception
-			if (help) {
-				throw new MissingOptionsHelp(this.getHelp());
-			} else {
-				throw new MissingOptions(String.format("Missing options for command: %s - %s\n%s", this.commandName, options, this.getHelp()));
+			// Variadic is filled when there is at least one value (values are lazy)
+			if (values.hasNext()) {
+				result.set(getExpressionSlot(variadicSlot).getId(), null);
+			}
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_POSITIONAL_ASSIGNMENT, start);
+			}
+		}
+		
+		// End of options between options or fixed values
+		result.setRemainingArguments(rest != null ? rest : values.getRemainingArguments());
+		
+		start = profile != null ? System.nanoTime() : 0;
+		try {
+			checkRequired(result.filled, help, null);
+			checkConstraints(result.filled, help, null);
+		} finally {
+			if (profile != null) {
+				profile.record(ParseProfile.STAGE_VALIDATION, start);
 			}
 		}
+		
+		return values;
 	}
 	
 	/**
-	 * Concatenate parameters quotes etc.
+	 * Resolve option from parameter.
 	 * 
-	 * @param arr Parameters array
+	 * @param parameter Parameter (-x or --xxx)
 	 * 
-	 * @throws Exception Parenthesses overleaps
+	 * @throws UnexpectedOption When option is not defined
 	 * 
-	 * @return Concatened array
+	 * @return Option
 	 */
-	private String[] concatenateParameters(String [] params) throws Exception {
-		// List of new strings
-		List<String> parameters = new LinkedList<String>();
+	private Option resolveOption(String parameter) throws UnexpectedOption {
+		Option o = getOptionByParameter(parameter);
 		
-		// Marks
-		boolean singleQuotedOpen = false;
-		boolean doubleQuotedOpen = false;
+		// Throw exception of undefined option!
+		if (o == null) {
+			throw new UnexpectedOption(formatMessage("Command: %s unexcepted option %s", this.commandName, parameter ));
+		}
 		
+		return o;
+	}
+	
+	/**
+	 * Bind value to option which requires value.
+	 * 
+	 * @param o Option
+	 * @param nextParameter Next parameter or null
+	 * 
+	 * @throws MissingOptionValue When value is missing
+	 * 
+	 * @return Value
+	 */
+	private String bindValue(Option o, String nextParameter) throws MissingOptionValue {
+		// Throw new exception when next string is null (not exist) or next string is option!!!
+		if (nextParameter == null || isOption(nextParameter)) {
+			// End with exception
+			throw new MissingOptionValue(formatMessage("Command: %s - value: %c(%s) is required!", this.commandName, o.getShortNameCodePoint(), o.getFullName()));
+		}
+		
+		// Next parameter is value!
+		return nextParameter;
+	}
+	
+	/**
+	 * Return value of path or expression (trimmed, without quotes).
+	 * 
+	 * @param parameter Parameter
+	 * 
+	 * @return Value or null when parameter is empty
+	 */
+	static String pathOrExpressionValue(String parameter) {
+		String pom = parameter.trim();
+		
+		// Skip when there is no string!
+		if (pom.length() == 0) {
+			return null;
+		}
 		
-		String test = "";
-		for(int i = 0; i < params.length; i++) {
-			if (i == 0) {
-				test = params[i];
+		// Strip quotes
+		if (pom.charAt(0) == '\'' || pom.charAt(0) == '"') {
+			pom = pom.substring(1, pom.length() - 1);
+		}
+		
+		return pom;
+	}
+	
+	/**
+	 * Throw exception when some required option is missing.
+	 * 
+	 * @param filledMask Mask of filled options
+	 * @param help Help option was found
+	 * @param diagnostics Diagnostics or null (throw)
+	 * 
+	 * @throws MissingOptionsHelp Required options missing, help was found
+	 * @throws MissingOptions Required options missing
+	 */
+	private void checkRequired(long[] filledMask, boolean help, ParseDiagnostics diagnostics) throws Exception {
+		if (hasMissing(filledMask)) {
+			// Throw exception
+			if (help) {
+				report(diagnostics, -1, null, new MissingOptionsHelp(this.getHelp()));
 			} else {
-				test += " "+params[i];
+				report(diagnostics, -1, null, new MissingOptions(formatMessage("Missing options for command: %s - %s\n%s", this.commandName, missingOptions(filledMask), this.getHelp())));
 			}
 		}
+	}
+	
+	/**
+	 * Assign paths or expressions to definitions - required first, then optional.
+	 * Variadic definition takes all values which are not consumed by definitions
+	 * before (from start) and after it (from end).
+	 * 
+	 * @param poe Array of values
+	 * @param poePositions Token indexes of values (only when collecting)
+	 * @param poeCount Count of values in array
+	 * @param result Parse result
+	 * @param diagnostics Diagnostics or null (throw)
+	 * 
+	 * @throws UnknownAttribute When there are more values than definitions
+	 */
+	private void assignPathsOrExpressions(String [] poe, int [] poePositions, int poeCount, ParseResult result, ParseDiagnostics diagnostics) throws Exception {
+		int slots = exprRequiredOrder.size() + exprOptionalOrder.size();
 		
-		// Char by char and count \\
-		int length = test.length();
-		int escapedCount = 0;
-		String token = "";
-		
-		for (int i = 0; i < length; i++) {
-			char c = test.charAt(i);
-			if (c == ' ' && escapedCount % 2 == 0 && !singleQuotedOpen && !doubleQuotedOpen && token.length() > 0) {
-				if (!token.isEmpty()) {
-					parameters.add(token);
-				}
-				escapedCount = 0;
-				token = "";
-			} else if(c == '\\') {
-				escapedCount++;
-				token += "\\";
-			} else if(c == '\'' && escapedCount % 2 == 0) {
-				if (singleQuotedOpen == true) {
-					token += "'";
-					if (!token.isEmpty()) {
-						parameters.add(token);
-					}
-					escapedCount = 0;
-					singleQuotedOpen = false;
-					token = "";
-				} else if(doubleQuotedOpen) {
-					throw new OverlapingBracketsException("Quoted \" overleaping with '!");
-				} else {
-					singleQuotedOpen = true;
-					if (!token.isEmpty()) {
-						parameters.add(token);
-					}
-					escapedCount = 0;
-					token = "'";
+		// No variadic - one value per slot
+		if (variadicSlot == -1) {
+			for (int i = 0; i < poeCount; i++) {
+				if (i >= slots) {
+					// Unknown attribute! (every one is reported when collecting)
+					report(diagnostics, poePositions == null ? -1 : poePositions[i], poe[i], new UnknownAttribute(formatMessage("Unknown attribute: \"%s\" for command: %s\n", poe[i], this.commandName)));
+					continue;
 				}
-			} else if(c == '"' && escapedCount % 2 == 0) {
-				if (doubleQuotedOpen) {
-					token += "\"";
-					if (!token.isEmpty()) {
-						parameters.add(token);
-					}
-					escapedCount = 0;
-					doubleQuotedOpen = false;
-					token = "";
-				} else if(singleQuotedOpen) {
-					throw new OverlapingBracketsException("Quote ' overleaping with \"!");
-				} else {
-					doubleQuotedOpen = true;
-					if (!token.isEmpty()) {
-						parameters.add(token);
-					}
-					escapedCount = 0;
-					token = "\"";
-				}
-			} else {
-				token += c+"";
-				escapedCount = 0;
+				result.set(getExpressionSlot(i).getId(), poe[i]);
 			}
+			return;
 		}
 		
-		if (token.length() > 0) {
-			parameters.add(token);
+		// Slots before variadic are filled from start
+		int head = Math.min(poeCount, variadicSlot);
+		for (int i = 0; i < head; i++) {
+			result.set(getExpressionSlot(i).getId(), poe[i]);
 		}
-		if (singleQuotedOpen) {
-			throw new OverlapingBracketsException("Single quoted bracket not closed!");
+		
+		// Slots after variadic are filled from end
+		int tail = Math.min(poeCount - head, slots - variadicSlot - 1);
+		for (int i = 0; i < tail; i++) {
+			result.set(getExpressionSlot(variadicSlot + 1 + i).getId(), poe[poeCount - tail + i]);
 		}
 		
-		if (doubleQuotedOpen) {
-			throw new OverlapingBracketsException("Double quoted bracket not closed!");
+		// Rest belongs to variadic (view over array, no copy)
+		int from = head;
+		int to = poeCount - tail;
+		if (to > from) {
+			result.set(getExpressionSlot(variadicSlot).getId(), Collections.unmodifiableList(Arrays.asList(poe).subList(from, to)));
 		}
+	}
+	
+	/**
+	 * Return path or expression definition in assigning order (required first).
+	 * 
+	 * @param slot Slot index
+	 * 
+	 * @return Option
+	 */
+	Option getExpressionSlot(int slot) {
+		int requiredCount = exprRequiredOrder.size();
+		if (slot < requiredCount) {
+			return exprRequiredOrder.get(slot);
+		}
+		return exprOptionalOrder.get(slot - requiredCount);
+	}
+	
+	/**
+	 * Throw exception when some constraint is not satisfied.
+	 * 
+	 * @param filledMask Mask of filled options
+	 * @param help Help option was found
+	 * @param diagnostics Diagnostics or null (throw)
+	 * 
+	 * @throws MissingOptionsHelp Constraint violated, help was found
+	 * @throws ConstraintViolation Constraint violated
+	 */
+	private void checkConstraints(long[] filledMask, boolean help, ParseDiagnostics diagnostics) throws Exception {
+		for (int i = 0; i < constraints.size(); i++) {
+			OptionConstraint constraint = constraints.get(i);
+			if (!constraint.isSatisfied(filledMask)) {
+				if (help) {
+					report(diagnostics, -1, null, new MissingOptionsHelp(this.getHelp()));
+					return;
+				}
+				report(diagnostics, -1, null, new ConstraintViolation(formatMessage("Command: %s - %s\n%s", this.commandName, constraint.description, this.getHelp())));
+			}
+		}
+	}
+	
+	/**
+	 * Return true when some required option bit is not set.
+	 * 
+	 * @param filledMask Mask of filled options
+	 * 
+	 * @return True when required option is missing
+	 */
+	private boolean hasMissing(long[] filledMask) {
+		long[] requiredMask = index.requiredMask;
+		for (int i = 0; i < requiredMask.length; i++) {
+			if ((requiredMask[i] & ~filledMask[i]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Create list of missing required options from bits (only on failure).
+	 * 
+	 * @param filledMask Mask of filled options
+	 * 
+	 * @return Comma separated full names
+	 */
+	private String missingOptions(long[] filledMask) {
+		StringBuilder options = new StringBuilder();
+		long[] requiredMask = index.requiredMask;
 		
-		String [] arr = new String[parameters.size()];
-		for (int i = 0; i < parameters.size(); i++) {
-			arr[i] = parameters.get(i);
+		for (int i = 0; i < requiredMask.length; i++) {
+			long missing = requiredMask[i] & ~filledMask[i];
+			while (missing != 0) {
+				int id = (i << 6) + Long.numberOfTrailingZeros(missing);
+				missing &= missing - 1;
+				
+				if (options.length() > 0) {
+					options.append(", ");
+				}
+				options.append(index.byId[id].getFullName());
+			}
+		}
+		
+		return options.toString();
+	}
+	
+	/**
+	 * Concatenate parameters quotes etc.
+	 * 
+	 * @param arr Parameters array
+	 * @param diagnostics Diagnostics or null (throw)
+	 * 
+	 * @throws Exception Parenthesses overleaps
+	 * 
+	 * @return Concatened array
+	 */
+	private String[] concatenateParameters(String [] params, ParseDiagnostics diagnostics) throws Exception {
+		List<String> parameters;
+		if (diagnostics == null) {
+			// Very large inputs are tokenized in parallel, small ones sequentially
+			parameters = ParallelTokenizer.tokenize(params);
+		} else {
+			// Collecting - keep tokens before quoting error
+			parameters = new ArrayList<String>(params.length);
+			Tokenizer tokenizer = new Tokenizer(params);
+			try {
+				String token;
+				while ((token = tokenizer.nextToken()) != null) {
+					parameters.add(token);
+				}
+			} catch (OverlapingBracketsException e) {
+				diagnostics.add(parameters.size(), null, e);
+			}
 		}
 		
-		return arr;
+		return parameters.toArray(new String[parameters.size()]);
 	}
 	
 	/**
@@ -613,28 +1451,28 @@ public class OptParser {
 	 * 
 	 * @return Option instance
 	 */
-	private Option getOptionByParameter(String parameter) {
+	Option getOptionByParameter(String parameter) {
 		// Compare with what?!
 		if (parameter.startsWith("--")) {
 			// Remove -- from parameter name
-			parameter = parameter.substring(2);
-			
-			// Full
-			for (Option o : optionsContainer) {
-				if (o.getFullName().equals(parameter)) return o;
-			}
-		} else {
-			// Short name!
-			char param = parameter.charAt(1);
-			
-			// Compare
-			for(Option o : optionsContainer) {
-				if (o.getShortName() == param) return o;
-			}
+			return getOptionByFullName(parameter.substring(2));
 		}
 		
-		// Nothing was found!
-		return null;
+		// Short name! (ASCII by array index, rest by hash)
+		int param = parameter.codePointAt(1);
+		
+		return index.byShortName(param);
+	}
+	
+	/**
+	 * Return option by full name (without --).
+	 * 
+	 * @param fullName Full name
+	 * 
+	 * @return Option instance
+	 */
+	Option getOptionByFullName(String fullName) {
+		return index.byFullName(fullName);
 	}
 	
 	/**
@@ -647,11 +1485,13 @@ public class OptParser {
 	 */
 	public String getOptionValue(String parameter) {
 		// --
-		if (!parameter.startsWith("--")) 
-			parameter = "--" + parameter;
+		if (parameter.startsWith("--")) 
+			parameter = parameter.substring(2);
 		
-		// Get option
-		Option o = getOptionByParameter(parameter);
+		// Get option (filled shared option is parser copy)
+		Option o = optionsValues.get(parameter);
+		if (o == null)
+			o = getOptionByFullName(parameter);
 		
 		if (o == null)
 			return null;
@@ -659,6 +1499,26 @@ public class OptParser {
 		return o.value();
 	}
 	
+	/**
+	 * Return converted value or converted default value.
+	 * 
+	 * @param optName Option name
+	 * 
+	 * @throws InvalidOptionValue Undefined option, no converter or conversion failed
+	 * 
+	 * @return Converted value
+	 */
+	public <T> T getConvertedValue(String optName) throws InvalidOptionValue {
+		Option o = optionsValues.get(optName);
+		if (o == null) {
+			o = getOptionByFullName(optName);
+		}
+		if (o == null) {
+			throw new InvalidOptionValue(String.format("Command: %s - undefined option %s!", this.commandName, optName));
+		}
+		return o.getConvertedValue();
+	}
+	
 	/**
 	 * Return true when option is filled!
 	 * 
@@ -675,6 +1535,16 @@ public class OptParser {
 		}
 	}
 	
+	/**
+	 * Return parameters after end of options "--" (after parsing arguments,
+	 * lazy parsing knows them only when "--" precedes variadic values).
+	 * 
+	 * @return Read-only view of parameters, empty without "--"
+	 */
+	public List<String> getRemainingArguments() {
+		return remainingArguments;
+	}
+	
 	/** 
 	 * Get option via full name. 
 	 * @param optName Option name
@@ -689,6 +1559,84 @@ public class OptParser {
 		}
 	}
 	
+	/**
+	 * Return command name.
+	 * 
+	 * @return Command name
+	 */
+	public String getCommandName() {
+		return this.commandName;
+	}
+	
+	/**
+	 * Return options in order of their ids.
+	 * 
+	 * @return Options
+	 */
+	List<Option> getOptionsById() {
+		return Collections.unmodifiableList(Arrays.asList(index.byId).subList(0, index.count));
+	}
+	
+	/**
+	 * Return count of options (ids are 0..count-1).
+	 * 
+	 * @return Count
+	 */
+	int getOptionCount() {
+		return index.count;
+	}
+	
+	/**
+	 * Return option by id.
+	 * 
+	 * @param id Option id
+	 * 
+	 * @return Option
+	 */
+	Option getOptionById(int id) {
+		return index.byId[id];
+	}
+	
+	/**
+	 * Is option defined in this parser (key check)?
+	 * 
+	 * @param o Option
+	 * 
+	 * @return True if its
+	 */
+	boolean hasOption(Option o) {
+		OptionIndex index = this.index;
+		int id = o.getId();
+		return id >= 0 && id < index.count && index.byId[id] == o;
+	}
+	
+	/**
+	 * Return count of paths or expressions.
+	 * 
+	 * @return Count of paths or expressions
+	 */
+	int getExpressionCount() {
+		return exprRequiredOrder.size() + exprOptionalOrder.size();
+	}
+	
+	/**
+	 * Return variadic path or expression slot.
+	 * 
+	 * @return Slot or -1
+	 */
+	int getVariadicSlot() {
+		return variadicSlot;
+	}
+	
+	/**
+	 * Return constraints in order of checking.
+	 * 
+	 * @return Constraints
+	 */
+	List<OptionConstraint> getConstraints() {
+		return constraints;
+	}
+	
 	/** 
 	 * Return all required parameters in set.
 	 *  
@@ -697,15 +1645,8 @@ public class OptParser {
 	public Set<String> getRequiredParameters() {
 		Set<String> ret = new TreeSet<String>();
 		
-		// Iterate parameters
-		for (Option o : optionsContainer) {
-			if (o.isRequired()) {
-				ret.add(o.getFullName());
-			}
-		}
-		
-		// Iterate required parameters (paths or expressions)
-		for (Option o : exprRequiredOrder) {
+		// Iterate required mask
+		for (Option o : getOptionsById()) {
 			if (o.isRequired()) {
 				ret.add(o.getFullName());
 			}
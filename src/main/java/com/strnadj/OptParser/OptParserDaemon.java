@@ -0,0 +1,623 @@
+package com.strnadj.OptParser;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.BindException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.strnadj.OptParser.exceptions.MissingOptionsHelp;
+
+/**
+ * Warm daemon - resident JVM runs command for arguments received over unix domain socket.
+ *
+ * Protocol (all integers are big endian):
+ *  - request: int count of arguments, then for every argument int length and UTF-8 bytes,
+ *    then working directory of client (int length and UTF-8 bytes), int count of
+ *    environment variables and for every one int length and UTF-8 bytes of NAME=value
+ *  - response: frames of byte type, int length and payload, where type is
+ *    'O' (stdout), 'E' (stderr) or 'X' (exit, payload is int exit code, last frame)
+ *
+ * Arguments are parsed by parse(), so one pre-built parser is shared by all
+ * connections, handler has to be thread safe. Handler gets working directory
+ * and environment of client (Invocation), daemon's own are unrelated. At most maxConnections
+ * connections are handled at once (next ones wait in socket backlog) and
+ * request is limited to MAX_REQUEST_BYTES, argument buffers grow with read
+ * data, not with declared lengths. Help request prints help and
+ * exits with 0, parse errors are printed to stderr and exit with EXIT_USAGE.
+ * Launcher script is bin/optparser-client.
+ *
+ * @author strnadj
+ */
+public class OptParserDaemon implements Closeable {
+	/** Frame types. */
+	public final static int FRAME_STDOUT = 'O';
+	public final static int FRAME_STDERR = 'E';
+	public final static int FRAME_EXIT = 'X';
+
+	/** Exit codes. */
+	public final static int EXIT_FAILURE = 1;
+	public final static int EXIT_USAGE = 2;
+
+	/** Default count of connections handled at once. */
+	public final static int DEFAULT_MAX_CONNECTIONS = 16;
+
+	/** Maximal count of arguments (or variables) and size of request (headers and data). */
+	private final static int MAX_ARGUMENTS = 65536;
+	private final static int MAX_REQUEST_BYTES = 4 << 20;
+
+	/**
+	 * Invocation of client - raw arguments, working directory and environment.
+	 */
+	public final static class Invocation {
+		/** Raw arguments. */
+		private final String [] arguments;
+
+		/** Working directory of client. */
+		private final Path workingDirectory;
+
+		/** Environment of client. */
+		private final Map<String, String> environment;
+
+		Invocation(String [] arguments, Path workingDirectory, Map<String, String> environment) {
+			this.arguments = arguments;
+			this.workingDirectory = workingDirectory;
+			this.environment = Collections.unmodifiableMap(environment);
+		}
+
+		/**
+		 * Return raw arguments.
+		 *
+		 * @return Copy of arguments
+		 */
+		public String [] getArguments() {
+			return arguments.clone();
+		}
+
+		/**
+		 * Return working directory of client (resolve relative paths against it).
+		 *
+		 * @return Absolute path
+		 */
+		public Path getWorkingDirectory() {
+			return workingDirectory;
+		}
+
+		/**
+		 * Return environment variables of client.
+		 *
+		 * @return Read-only map
+		 */
+		public Map<String, String> getEnvironment() {
+			return environment;
+		}
+	}
+
+	/**
+	 * Command run for parsed arguments.
+	 */
+	public interface Handler {
+		/**
+		 * Run command.
+		 *
+		 * @param result Parse result
+		 * @param invocation Working directory and environment of client
+		 * @param out Standard output of client
+		 * @param err Standard error output of client
+		 *
+		 * @return Exit code
+		 *
+		 * @throws Exception Failure (printed to stderr, exit code EXIT_FAILURE)
+		 */
+		int run(ParseResult result, Invocation invocation, PrintStream out, PrintStream err) throws Exception;
+	}
+
+	/** Shared parser. */
+	private final OptParser parser;
+
+	/** Command handler. */
+	private final Handler handler;
+
+	/** Socket path. */
+	private final Path path;
+
+	/** Server channel. */
+	private final ServerSocketChannel server;
+
+	/** Connection workers (idle ones time out). */
+	private final ThreadPoolExecutor workers;
+
+	/** Free connection slots. */
+	private final Semaphore connections;
+
+	/** Accept thread (null when not started). */
+	private Thread acceptor;
+
+	/** Closed? */
+	private volatile boolean closed = false;
+
+	/**
+	 * Bind daemon to socket path (stale socket file is replaced, socket of
+	 * running daemon is not).
+	 *
+	 * @param parser Pre-built parser
+	 * @param handler Command handler
+	 * @param path Socket path
+	 *
+	 * @throws IOException Bind failure, BindException when socket is in use
+	 */
+	public OptParserDaemon(OptParser parser, Handler handler, Path path) throws IOException {
+		this(parser, handler, path, DEFAULT_MAX_CONNECTIONS);
+	}
+
+	/**
+	 * Bind daemon to socket path with limit of connections handled at once.
+	 *
+	 * @param parser Pre-built parser
+	 * @param handler Command handler
+	 * @param path Socket path
+	 * @param maxConnections Maximal count of connections handled at once
+	 *
+	 * @throws IOException Bind failure, BindException when socket is in use
+	 */
+	public OptParserDaemon(OptParser parser, Handler handler, Path path, int maxConnections) throws IOException {
+		if (maxConnections < 1) {
+			throw new IllegalArgumentException("Max connections must be positive!");
+		}
+		this.parser = parser;
+		this.handler = handler;
+		this.path = path;
+
+		removeStaleSocket(path);
+		this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		this.server.bind(UnixDomainSocketAddress.of(path));
+
+		this.connections = new Semaphore(maxConnections);
+		this.workers = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r -> {
+			Thread t = new Thread(r, "optparser-daemon-worker");
+			t.setDaemon(true);
+			return t;
+		});
+		this.workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Remove socket file nobody accepts on.
+	 *
+	 * @param path Socket path
+	 *
+	 * @throws IOException Socket is in use or path is not a socket
+	 */
+	private static void removeStaleSocket(Path path) throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		} catch (IOException e) {
+			// No file
+			return;
+		}
+		if (!attributes.isOther()) {
+			throw new IOException("Not a socket: " + path);
+		}
+
+		boolean live;
+		try (SocketChannel c = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+			live = true;
+		} catch (IOException e) {
+			// Connection refused - daemon is gone
+			live = false;
+		}
+		if (live) {
+			throw new BindException("Socket is in use: " + path);
+		}
+		Files.deleteIfExists(path);
+	}
+
+	/**
+	 * Return socket path.
+	 *
+	 * @return Path
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * Accept connections in background thread.
+	 *
+	 * @return Self
+	 */
+	public synchronized OptParserDaemon start() {
+		if (acceptor == null) {
+			acceptor = new Thread(this::serve, "optparser-daemon");
+			acceptor.setDaemon(true);
+			acceptor.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Accept connections until daemon is closed.
+	 */
+	public void serve() {
+		while (!closed) {
+			// Connection is accepted only when it can be handled
+			connections.acquireUninterruptibly();
+			SocketChannel client;
+			try {
+				client = server.accept();
+			} catch (IOException e) {
+				// Closed server or broken socket, stop accepting
+				connections.release();
+				return;
+			}
+			try {
+				workers.execute(() -> {
+					try {
+						handle(client);
+					} finally {
+						connections.release();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// Closed meanwhile
+				connections.release();
+				try {
+					client.close();
+				} catch (IOException ignored) {
+					// Nothing to answer
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Handle one connection.
+	 *
+	 * @param client Client channel
+	 */
+	private void handle(SocketChannel client) {
+		try (SocketChannel c = client) {
+			Invocation invocation = readRequest(new DataInputStream(Channels.newInputStream(c)));
+			DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(c)));
+
+			PrintStream out = new PrintStream(new BufferedOutputStream(new FrameOutputStream(frames, FRAME_STDOUT)), true, "UTF-8");
+			PrintStream err = new PrintStream(new BufferedOutputStream(new FrameOutputStream(frames, FRAME_STDERR)), true, "UTF-8");
+
+			int code = run(invocation, out, err);
+			out.flush();
+			err.flush();
+
+			synchronized (frames) {
+				frames.writeByte(FRAME_EXIT);
+				frames.writeInt(4);
+				frames.writeInt(code);
+				frames.flush();
+			}
+		} catch (IOException e) {
+			// Client disconnected or sent invalid request, nothing to answer
+		}
+	}
+
+	/**
+	 * Parse arguments and run handler.
+	 *
+	 * @param invocation Arguments, working directory and environment
+	 * @param out Output
+	 * @param err Error output
+	 *
+	 * @return Exit code
+	 */
+	private int run(Invocation invocation, PrintStream out, PrintStream err) {
+		ParseResult result;
+		try {
+			result = parser.parse(invocation.arguments);
+		} catch (MissingOptionsHelp e) {
+			out.print(parser.getHelp());
+			return 0;
+		} catch (Exception e) {
+			err.println(parser.getCommandName() + ": " + e.getMessage());
+			return EXIT_USAGE;
+		}
+
+		try {
+			return handler.run(result, invocation, out, err);
+		} catch (Exception e) {
+			e.printStackTrace(err);
+			return EXIT_FAILURE;
+		}
+	}
+
+	/**
+	 * Read request - arguments, working directory and environment.
+	 *
+	 * @param in Input
+	 *
+	 * @return Invocation
+	 *
+	 * @throws IOException Invalid request
+	 */
+	private static Invocation readRequest(DataInputStream in) throws IOException {
+		RequestReader reader = new RequestReader(in);
+
+		int count = reader.readCount();
+		String [] args = new String[count];
+		for (int i = 0; i < count; i++) {
+			args[i] = reader.readString();
+		}
+
+		Path workingDirectory;
+		try {
+			workingDirectory = Paths.get(reader.readString()).toAbsolutePath();
+		} catch (InvalidPathException e) {
+			throw new IOException("Invalid working directory", e);
+		}
+
+		count = reader.readCount();
+		Map<String, String> environment = new LinkedHashMap<String, String>();
+		for (int i = 0; i < count; i++) {
+			String variable = reader.readString();
+			int eq = variable.indexOf('=');
+			if (eq <= 0) {
+				throw new IOException("Invalid environment variable");
+			}
+			environment.put(variable.substring(0, eq), variable.substring(eq + 1));
+		}
+		return new Invocation(args, workingDirectory, environment);
+	}
+
+	/**
+	 * Reader of request strings within byte budget.
+	 */
+	private final static class RequestReader {
+		/** Input. */
+		private final DataInputStream in;
+
+		/** Left bytes of request, length headers included. */
+		private long budget = MAX_REQUEST_BYTES;
+
+		RequestReader(DataInputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Read int header.
+		 *
+		 * @return Value
+		 *
+		 * @throws IOException Request is too large
+		 */
+		private int readInt() throws IOException {
+			budget -= 4;
+			if (budget < 0) {
+				throw new IOException("Request is too large");
+			}
+			return in.readInt();
+		}
+
+		/**
+		 * Read count of strings (every one has at least length header).
+		 *
+		 * @return Count
+		 *
+		 * @throws IOException Invalid count
+		 */
+		int readCount() throws IOException {
+			int count = readInt();
+			if (count < 0 || count > MAX_ARGUMENTS || 4L * count > budget) {
+				throw new IOException("Invalid count: " + count);
+			}
+			return count;
+		}
+
+		/**
+		 * Read string.
+		 *
+		 * @return String
+		 *
+		 * @throws IOException Invalid length or truncated request
+		 */
+		String readString() throws IOException {
+			int length = readInt();
+			if (length < 0 || length > budget) {
+				throw new IOException("Invalid length: " + length);
+			}
+			budget -= length;
+
+			// Buffer grows with received data (declared length is not trusted)
+			byte [] bytes = in.readNBytes(length);
+			if (bytes.length != length) {
+				throw new EOFException("Truncated request");
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Stop accepting, close socket and remove socket file.
+	 *
+	 * Running commands are finished.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		try {
+			server.close();
+		} finally {
+			workers.shutdown();
+			Files.deleteIfExists(path);
+		}
+	}
+
+	/**
+	 * Run command in daemon - Java client (tests, tools already running in JVM),
+	 * working directory and environment of this JVM are sent.
+	 *
+	 * @param path Socket path
+	 * @param args Arguments
+	 * @param out Standard output
+	 * @param err Standard error output
+	 *
+	 * @return Exit code
+	 *
+	 * @throws IOException Communication failure
+	 */
+	public static int call(Path path, String [] args, OutputStream out, OutputStream err) throws IOException {
+		return call(path, args, Paths.get("").toAbsolutePath(), System.getenv(), out, err);
+	}
+
+	/**
+	 * Run command in daemon with working directory and environment.
+	 *
+	 * @param path Socket path
+	 * @param args Arguments
+	 * @param workingDirectory Working directory
+	 * @param environment Environment variables
+	 * @param out Standard output
+	 * @param err Standard error output
+	 *
+	 * @return Exit code
+	 *
+	 * @throws IOException Communication failure
+	 */
+	public static int call(Path path, String [] args, Path workingDirectory, Map<String, String> environment, OutputStream out, OutputStream err) throws IOException {
+		try (SocketChannel c = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(c)));
+			request.writeInt(args.length);
+			for (String arg : args) {
+				writeString(request, arg);
+			}
+			writeString(request, workingDirectory.toString());
+			request.writeInt(environment.size());
+			for (Map.Entry<String, String> e : environment.entrySet()) {
+				writeString(request, e.getKey() + "=" + e.getValue());
+			}
+			request.flush();
+
+			DataInputStream in = new DataInputStream(Channels.newInputStream(c));
+			byte [] buffer = new byte[8192];
+			while (true) {
+				int type;
+				int length;
+				try {
+					type = in.readUnsignedByte();
+					length = in.readInt();
+				} catch (EOFException e) {
+					throw new IOException("Daemon closed connection without exit code", e);
+				}
+
+				if (type == FRAME_EXIT) {
+					out.flush();
+					err.flush();
+					return in.readInt();
+				}
+
+				OutputStream target = type == FRAME_STDOUT ? out : err;
+				while (length > 0) {
+					int n = in.read(buffer, 0, Math.min(length, buffer.length));
+					if (n < 0) {
+						throw new EOFException("Truncated frame");
+					}
+					target.write(buffer, 0, n);
+					length -= n;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Write string of request.
+	 *
+	 * @param request Request
+	 * @param s String
+	 *
+	 * @throws IOException Write failure
+	 */
+	private static void writeString(DataOutputStream request, String s) throws IOException {
+		byte [] bytes = s.getBytes(StandardCharsets.UTF_8);
+		request.writeInt(bytes.length);
+		request.write(bytes);
+	}
+
+	/**
+	 * Run daemon for parser and handler created by static factory methods.
+	 *
+	 * Usage: OptParserDaemon socketPath parserClass parserMethod handlerClass handlerMethod
+	 *
+	 * @param args Arguments
+	 *
+	 * @throws Exception Failure
+	 */
+	public static void main(String [] args) throws Exception {
+		if (args.length != 5) {
+			System.err.println("Usage: OptParserDaemon socketPath parserClass parserMethod handlerClass handlerMethod");
+			System.exit(EXIT_USAGE);
+		}
+
+		OptParser parser = (OptParser) Class.forName(args[1]).getMethod(args[2]).invoke(null);
+		Handler handler = (Handler) Class.forName(args[3]).getMethod(args[4]).invoke(null);
+
+		try (OptParserDaemon daemon = new OptParserDaemon(parser, handler, Paths.get(args[0]))) {
+			daemon.serve();
+		}
+	}
+
+	/**
+	 * Output stream writing frames of one type.
+	 */
+	private final static class FrameOutputStream extends OutputStream {
+		/** Shared frame output. */
+		private final DataOutputStream frames;
+
+		/** Frame type. */
+		private final int type;
+
+		FrameOutputStream(DataOutputStream frames, int type) {
+			this.frames = frames;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte [] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return;
+			}
+			synchronized (frames) {
+				frames.writeByte(type);
+				frames.writeInt(len);
+				frames.write(b, off, len);
+				frames.flush();
+			}
+		}
+	}
+}
@@ -0,0 +1,647 @@
+package com.strnadj.OptParser;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generator of specialized parser source for fixed option definition.
+ *
+ * Generated class dispatches long names by switch on String, short names by
+ * switch on code point and tracks required options and constraints in int
+ * masks. It gives same
+ * results and exceptions as interpreted OptParser (parseArguments, getOptionValue,
+ * isOptionFilled, getRemainingArguments, getHelp). Variadic paths or expressions
+ * are not supported.
+ *
+ * Can be run at build time (ex: exec-maven-plugin in generate-sources phase):
+ * OptParserGenerator factoryClass factoryMethod package className outputDirectory
+ * where factoryMethod is static method without parameters returning OptParser.
+ *
+ * @author strnadj
+ */
+public class OptParserGenerator {
+	/** Parser definition. */
+	private final OptParser parser;
+
+	/** Options in id order. */
+	private final List<Option> options;
+
+	/** Count of int words for masks. */
+	private final int words;
+
+	/** Generated class name. */
+	private String className;
+
+	/** Output. */
+	private final StringBuilder out = new StringBuilder(4096);
+
+	/**
+	 * Create generator for parser definition.
+	 *
+	 * @param parser Parser definition
+	 */
+	public OptParserGenerator(OptParser parser) {
+		if (parser.getVariadicSlot() != -1) {
+			throw new IllegalArgumentException(String.format("Command: %s - variadic paths or expressions are not supported by generator!", parser.getCommandName()));
+		}
+
+		this.parser = parser;
+		this.options = parser.getOptionsById();
+		this.words = Math.max(1, (options.size() + 31) >>> 5);
+	}
+
+	/**
+	 * Generate source of specialized parser.
+	 *
+	 * @param packageName Package name (empty for default package)
+	 * @param className Class name
+	 *
+	 * @return Java source
+	 */
+	public String generate(String packageName, String className) {
+		this.className = className;
+		out.setLength(0);
+
+		if (packageName != null && packageName.length() > 0) {
+			line(0, "package " + packageName + ";");
+			line(0, "");
+		}
+		line(0, "import java.util.ArrayList;");
+		line(0, "import java.util.Arrays;");
+		line(0, "import java.util.Collections;");
+		line(0, "import java.util.List;");
+		line(0, "");
+		line(0, "import com.strnadj.OptParser.Tokenizer;");
+		line(0, "import com.strnadj.OptParser.exceptions.*;");
+		line(0, "");
+		line(0, "/**");
+		line(0, " * Parser for command: " + parser.getCommandName() + " (generated by OptParserGenerator, do not edit).");
+		line(0, " */");
+		line(0, "public final class " + className + " {");
+
+		generateFields();
+		generateParse();
+		generateLookups();
+		generateAccessors();
+
+		line(0, "}");
+		return out.toString();
+	}
+
+	/**
+	 * Constants and state fields.
+	 */
+	private void generateFields() {
+		StringBuilder names = new StringBuilder();
+		StringBuilder defaults = new StringBuilder();
+		for (Option o : options) {
+			if (names.length() > 0) {
+				names.append(", ");
+				defaults.append(", ");
+			}
+			names.append(literal(o.getFullName()));
+			defaults.append(literal(o.getDefaultValue()));
+		}
+
+		line(1, "/** Help string. */");
+		line(1, "public final static String HELP = " + literal(parser.getHelp()) + ";");
+		line(0, "");
+		line(1, "/** Option names by id. */");
+		line(1, "private final static String [] NAMES = {" + names + "};");
+		line(0, "");
+		line(1, "/** Default values by id. */");
+		line(1, "private final static String [] DEFAULTS = {" + defaults + "};");
+		line(0, "");
+
+		for (int w = 0; w < words; w++) {
+			int required = 0;
+			for (Option o : options) {
+				if (o.isRequired() && (o.getId() >>> 5) == w) {
+					required |= 1 << o.getId();
+				}
+			}
+			line(1, "/** Required options mask (ids " + (w << 5) + " - " + ((w << 5) + 31) + "). */");
+			line(1, "private final static int REQUIRED_" + w + " = 0x" + Integer.toHexString(required) + ";");
+			line(0, "");
+		}
+
+		for (int w = 0; w < words; w++) {
+			line(1, "/** Filled options (ids " + (w << 5) + " - " + ((w << 5) + 31) + "). */");
+			line(1, "private int filled" + w + ";");
+			line(0, "");
+		}
+
+		line(1, "/** Values by id. */");
+		line(1, "private final String [] values = new String[" + options.size() + "];");
+		line(0, "");
+		line(1, "/** Parameters after end of options \"--\". */");
+		line(1, "private List<String> remaining = Collections.emptyList();");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Create parser.");
+		line(1, " */");
+		line(1, "public " + className + "() {");
+		line(2, "Arrays.fill(values, \"\");");
+		line(1, "}");
+		line(0, "");
+	}
+
+	/**
+	 * Method parseArguments.
+	 */
+	private void generateParse() {
+		String command = parser.getCommandName();
+
+		line(1, "/**");
+		line(1, " * Parse arguments from command line.");
+		line(1, " * ");
+		line(1, " * @param parameters Parameters");
+		line(1, " * @throws Exception Parsing exception");
+		line(1, " */");
+		line(1, "public void parseArguments(String [] parameters) throws Exception {");
+		line(2, "// Forget previous parse");
+		for (int w = 0; w < words; w++) {
+			line(2, "filled" + w + " = 0;");
+		}
+		line(2, "Arrays.fill(values, \"\");");
+		line(2, "remaining = Collections.emptyList();");
+		line(0, "");
+		line(2, "// End of options - rest is passed through as view, it is not tokenized");
+		line(2, "int end = Tokenizer.endOfOptions(parameters);");
+		line(2, "if (end != -1) {");
+		line(3, "remaining = Collections.unmodifiableList(Arrays.asList(parameters).subList(end + 1, parameters.length));");
+		line(3, "parameters = Arrays.copyOf(parameters, end);");
+		line(2, "}");
+		line(0, "");
+		line(2, "List<String> tokens = new ArrayList<String>(parameters.length);");
+		line(2, "Tokenizer tokenizer = new Tokenizer(parameters);");
+		line(2, "String token;");
+		line(2, "while ((token = tokenizer.nextToken()) != null) {");
+		line(3, "tokens.add(token);");
+		line(2, "}");
+		line(2, "parameters = tokens.toArray(new String[tokens.size()]);");
+		line(2, "int size = parameters.length;");
+		line(0, "");
+		for (int w = 0; w < words; w++) {
+			line(2, "int seen" + w + " = 0;");
+		}
+		line(0, "");
+		line(2, "boolean help = false;");
+		line(2, "for (int i = 0; i < size; i++) {");
+		line(3, "if (parameters[i].equals(\"-h\") || parameters[i].equals(\"--help\")) {");
+		line(4, "help = true;");
+		line(3, "}");
+		line(2, "}");
+		line(0, "");
+		line(2, "String [] poe = new String[size];");
+		line(2, "int poeCount = 0;");
+		line(2, "for (int i = 0; i < size; i++) {");
+		line(3, "String parameter = parameters[i];");
+		line(3, "if (!parameter.startsWith(\"-\")) {");
+		line(4, "String pom = parameter.trim();");
+		line(4, "if (pom.length() == 0) {");
+		line(5, "continue;");
+		line(4, "}");
+		line(4, "if (pom.charAt(0) == '\\'' || pom.charAt(0) == '\"') {");
+		line(5, "pom = pom.substring(1, pom.length() - 1);");
+		line(4, "}");
+		line(4, "poe[poeCount++] = pom;");
+		line(4, "continue;");
+		line(3, "}");
+		line(0, "");
+		line(3, "int id = parameter.startsWith(\"--\") ? longId(parameter.substring(2)) : shortId(parameter.codePointAt(1));");
+		line(3, "switch (id) {");
+		for (Option o : options) {
+			int id = o.getId();
+			line(3, "case " + id + ":");
+			if (o.isValueRequired()) {
+				String message = String.format("Command: %s - value: %c(%s) is required!", command, o.getShortNameCodePoint(), o.getFullName());
+				line(4, "if (i + 1 >= size || parameters[i + 1].startsWith(\"-\")) {");
+				line(5, "throw new MissingOptionValue(" + literal(message) + ");");
+				line(4, "}");
+				line(4, "values[" + id + "] = parameters[++i];");
+			}
+			line(4, filledStatement(id));
+			line(4, seenStatement(id));
+			line(4, "break;");
+		}
+		line(3, "default:");
+		line(4, "throw new UnexpectedOption(" + literal("Command: " + command + " unexcepted option ") + " + parameter);");
+		line(3, "}");
+		line(2, "}");
+		line(0, "");
+
+		// Paths or expressions
+		int expressions = parser.getExpressionCount();
+		line(2, "for (int i = 0; i < poeCount; i++) {");
+		line(3, "switch (i) {");
+		for (int slot = 0; slot < expressions; slot++) {
+			int id = parser.getExpressionSlot(slot).getId();
+			line(3, "case " + slot + ":");
+			line(4, "values[" + id + "] = poe[i];");
+			line(4, filledStatement(id));
+			line(4, seenStatement(id));
+			line(4, "break;");
+		}
+		line(3, "default:");
+		line(4, "throw new UnknownAttribute(String.format(\"Unknown attribute: \\\"%s\\\" for command: %s\\n\", poe[i], " + literal(command) + "));");
+		line(3, "}");
+		line(2, "}");
+		line(0, "");
+
+		// Required check
+		StringBuilder condition = new StringBuilder();
+		StringBuilder seen = new StringBuilder();
+		for (int w = 0; w < words; w++) {
+			if (w > 0) {
+				condition.append(" || ");
+				seen.append(", ");
+			}
+			condition.append("(seen").append(w).append(" & REQUIRED_").append(w).append(") != REQUIRED_").append(w);
+			seen.append("seen").append(w);
+		}
+		line(2, "if (" + condition + ") {");
+		line(3, "if (help) {");
+		line(4, "throw new MissingOptionsHelp(HELP);");
+		line(3, "}");
+		line(3, "throw new MissingOptions(String.format(\"Missing options for command: %s - %s\\n%s\", " + literal(command) + ", missingOptions(new int[] {" + seen + "}), HELP));");
+		line(2, "}");
+
+		// Constraints - first violated one is reported
+		for (OptionConstraint constraint : parser.getConstraints()) {
+			String satisfied;
+			switch (constraint.type) {
+			case OptParser.CONSTRAINT_EXACTLY_ONE:
+				satisfied = countExpression(constraint.mask) + " == 1";
+				break;
+			case OptParser.CONSTRAINT_AT_MOST_ONE:
+				satisfied = countExpression(constraint.mask) + " <= 1";
+				break;
+			case OptParser.CONSTRAINT_AT_LEAST_ONE:
+				satisfied = countExpression(constraint.mask) + " >= 1";
+				break;
+			case OptParser.CONSTRAINT_REQUIRES:
+				satisfied = countExpression(constraint.trigger) + " == 0 || " + countExpression(constraint.mask) + " == " + bitCount(constraint.mask);
+				break;
+			default:
+				continue;
+			}
+			String message = String.format("Command: %s - %s\n%s", command, constraint.description, parser.getHelp());
+			line(0, "");
+			line(2, "if (!(" + satisfied + ")) {");
+			line(3, "if (help) {");
+			line(4, "throw new MissingOptionsHelp(HELP);");
+			line(3, "}");
+			line(3, "throw new ConstraintViolation(" + literal(message) + ");");
+			line(2, "}");
+		}
+		line(1, "}");
+		line(0, "");
+	}
+
+	/**
+	 * Switch based lookups of ids.
+	 */
+	private void generateLookups() {
+		// Full names - resolve as interpreted parser does (first in definition set)
+		Map<String, Integer> longIds = new LinkedHashMap<String, Integer>();
+		Map<Integer, Integer> shortIds = new LinkedHashMap<Integer, Integer>();
+		for (Option o : options) {
+			if (!longIds.containsKey(o.getFullName())) {
+				longIds.put(o.getFullName(), parser.getOptionByFullName(o.getFullName()).getId());
+			}
+			int shortName = o.getShortNameCodePoint();
+			if (o.POSITION == -1 && !shortIds.containsKey(shortName)) {
+				shortIds.put(shortName, parser.getOptionByParameter("-" + new String(Character.toChars(shortName))).getId());
+			}
+		}
+
+		line(1, "/**");
+		line(1, " * Return option id by full name.");
+		line(1, " * ");
+		line(1, " * @param name Full name");
+		line(1, " * @return Id or -1");
+		line(1, " */");
+		line(1, "private static int longId(String name) {");
+		line(2, "switch (name) {");
+		for (Map.Entry<String, Integer> e : longIds.entrySet()) {
+			line(2, "case " + literal(e.getKey()) + ":");
+			line(3, "return " + e.getValue() + ";");
+		}
+		line(2, "default:");
+		line(3, "return -1;");
+		line(2, "}");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Return option id by short name.");
+		line(1, " * ");
+		line(1, " * @param name Short name code point");
+		line(1, " * @return Id or -1");
+		line(1, " */");
+		line(1, "private static int shortId(int name) {");
+		line(2, "switch (name) {");
+		for (Map.Entry<Integer, Integer> e : shortIds.entrySet()) {
+			int shortName = e.getKey();
+			line(2, "case " + (shortName > 0x20 && shortName < 0x7f ? charLiteral((char) shortName) : "0x" + Integer.toHexString(shortName)) + ":");
+			line(3, "return " + e.getValue() + ";");
+		}
+		line(2, "default:");
+		line(3, "return -1;");
+		line(2, "}");
+		line(1, "}");
+		line(0, "");
+	}
+
+	/**
+	 * Public accessors.
+	 */
+	private void generateAccessors() {
+		line(1, "/**");
+		line(1, " * Is option filled by id?");
+		line(1, " * ");
+		line(1, " * @param id Option id");
+		line(1, " * @return True if its");
+		line(1, " */");
+		line(1, "private boolean isFilled(int id) {");
+		line(2, "switch (id >>> 5) {");
+		for (int w = 0; w < words; w++) {
+			line(2, "case " + w + ":");
+			line(3, "return (filled" + w + " & (1 << id)) != 0;");
+		}
+		line(2, "default:");
+		line(3, "return false;");
+		line(2, "}");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Create list of missing required options.");
+		line(1, " * ");
+		line(1, " * @param seen Seen options masks");
+		line(1, " * @return Comma separated full names");
+		line(1, " */");
+		line(1, "private static String missingOptions(int [] seen) {");
+		line(2, "int [] required = {" + requiredArray() + "};");
+		line(2, "StringBuilder options = new StringBuilder();");
+		line(2, "for (int id = 0; id < NAMES.length; id++) {");
+		line(3, "if ((required[id >>> 5] & ~seen[id >>> 5] & (1 << id)) != 0) {");
+		line(4, "if (options.length() > 0) {");
+		line(5, "options.append(\", \");");
+		line(4, "}");
+		line(4, "options.append(NAMES[id]);");
+		line(3, "}");
+		line(2, "}");
+		line(2, "return options.toString();");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Return default value or filled value.");
+		line(1, " * ");
+		line(1, " * @param parameter Option name");
+		line(1, " * @return Value");
+		line(1, " */");
+		line(1, "public String getOptionValue(String parameter) {");
+		line(2, "if (parameter.startsWith(\"--\")) {");
+		line(3, "parameter = parameter.substring(2);");
+		line(2, "}");
+		line(2, "int id = longId(parameter);");
+		line(2, "if (id == -1) {");
+		line(3, "return null;");
+		line(2, "}");
+		line(2, "return isFilled(id) ? values[id] : DEFAULTS[id];");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Return true when option is filled.");
+		line(1, " * ");
+		line(1, " * @param optName Option name");
+		line(1, " * @return True when option is filled");
+		line(1, " */");
+		line(1, "public boolean isOptionFilled(String optName) {");
+		line(2, "int id = longId(optName);");
+		line(2, "return id != -1 && isFilled(id);");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Return parameters after end of options \"--\".");
+		line(1, " * ");
+		line(1, " * @return Read-only view of parameters, empty without \"--\"");
+		line(1, " */");
+		line(1, "public List<String> getRemainingArguments() {");
+		line(2, "return remaining;");
+		line(1, "}");
+		line(0, "");
+		line(1, "/**");
+		line(1, " * Return command help.");
+		line(1, " * ");
+		line(1, " * @return Help string");
+		line(1, " */");
+		line(1, "public String getHelp() {");
+		line(2, "return HELP;");
+		line(1, "}");
+	}
+
+	/**
+	 * Required masks as array initializer.
+	 *
+	 * @return Initializer content
+	 */
+	private String requiredArray() {
+		StringBuilder ret = new StringBuilder();
+		for (int w = 0; w < words; w++) {
+			if (w > 0) {
+				ret.append(", ");
+			}
+			ret.append("REQUIRED_").append(w);
+		}
+		return ret.toString();
+	}
+
+	/**
+	 * Expression counting seen options of constraint mask.
+	 *
+	 * @param mask Mask of option ids (long words)
+	 * @return Expression
+	 */
+	private String countExpression(long[] mask) {
+		StringBuilder ret = new StringBuilder();
+		for (int w = 0; w < words; w++) {
+			int bits = 0;
+			for (int id = w << 5; id < (w << 5) + 32 && id < mask.length << 6; id++) {
+				if ((mask[id >>> 6] & (1L << id)) != 0) {
+					bits |= 1 << id;
+				}
+			}
+			if (bits != 0) {
+				if (ret.length() > 0) {
+					ret.append(" + ");
+				}
+				ret.append("Integer.bitCount(seen").append(w).append(" & 0x").append(Integer.toHexString(bits)).append(")");
+			}
+		}
+		return ret.length() > 0 ? ret.toString() : "0";
+	}
+
+	/**
+	 * Count of options in constraint mask.
+	 *
+	 * @param mask Mask of option ids (long words)
+	 * @return Count
+	 */
+	private static int bitCount(long[] mask) {
+		int count = 0;
+		for (long bits : mask) {
+			count += Long.bitCount(bits);
+		}
+		return count;
+	}
+
+	/**
+	 * Statement setting filled bit.
+	 *
+	 * @param id Option id
+	 * @return Statement
+	 */
+	private String filledStatement(int id) {
+		return "filled" + (id >>> 5) + " |= 0x" + Integer.toHexString(1 << id) + ";";
+	}
+
+	/**
+	 * Statement setting seen bit.
+	 *
+	 * @param id Option id
+	 * @return Statement
+	 */
+	private String seenStatement(int id) {
+		return "seen" + (id >>> 5) + " |= 0x" + Integer.toHexString(1 << id) + ";";
+	}
+
+	/**
+	 * Append indented line.
+	 *
+	 * @param indent Count of tabs
+	 * @param text Line
+	 */
+	private void line(int indent, String text) {
+		if (text.length() > 0) {
+			for (int i = 0; i < indent; i++) {
+				out.append('\t');
+			}
+		}
+		out.append(text).append('\n');
+	}
+
+	/**
+	 * Java string literal.
+	 *
+	 * @param s String or null
+	 * @return Literal
+	 */
+	static String literal(String s) {
+		if (s == null) {
+			return "null";
+		}
+
+		StringBuilder ret = new StringBuilder(s.length() + 2);
+		ret.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			ret.append(escape(s.charAt(i), '"'));
+		}
+		return ret.append('"').toString();
+	}
+
+	/**
+	 * Java char literal.
+	 *
+	 * @param c Char
+	 * @return Literal
+	 */
+	static String charLiteral(char c) {
+		return "'" + escape(c, '\'') + "'";
+	}
+
+	/**
+	 * Escape char for literal.
+	 *
+	 * @param c Char
+	 * @param quote Quote of literal
+	 * @return Escaped char
+	 */
+	private static String escape(char c, char quote) {
+		switch (c) {
+		case '\\':
+			return "\\\\";
+		case '\n':
+			return "\\n";
+		case '\r':
+			return "\\r";
+		case '\t':
+			return "\\t";
+		default:
+			if (c == quote) {
+				return "\\" + c;
+			}
+			if (c < 0x20 || c > 0x7e) {
+				return String.format("\\u%04x", (int) c);
+			}
+			return String.valueOf(c);
+		}
+	}
+
+	/**
+	 * Generate source and write it to output directory.
+	 *
+	 * @param parser Parser definition
+	 * @param packageName Package name
+	 * @param className Class name
+	 * @param outputDirectory Source root
+	 *
+	 * @throws IOException Write error
+	 *
+	 * @return Written file
+	 */
+	public static File write(OptParser parser, String packageName, String className, File outputDirectory) throws IOException {
+		String source = new OptParserGenerator(parser).generate(packageName, className);
+
+		File dir = new File(outputDirectory, packageName.replace('.', File.separatorChar));
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Can not create directory " + dir);
+		}
+
+		File file = new File(dir, className + ".java");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try {
+			writer.write(source);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Build time entry point.
+	 *
+	 * @param args factoryClass factoryMethod package className outputDirectory
+	 *
+	 * @throws Exception Generating exception
+	 */
+	public static void main(String [] args) throws Exception {
+		if (args.length != 5) {
+			System.err.println("Usage: OptParserGenerator factoryClass factoryMethod package className outputDirectory");
+			System.exit(1);
+		}
+
+		Method factory = Class.forName(args[0]).getMethod(args[1]);
+		OptParser parser = (OptParser) factory.invoke(null);
+
+		File file = write(parser, args[2], args[3], new File(args[4]));
+		System.out.println("Generated " + file);
+	}
+}
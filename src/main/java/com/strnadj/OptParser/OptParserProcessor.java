@@ -0,0 +1,321 @@
+package com.strnadj.OptParser;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive parsing pipeline - takes raw command strings, publishes parse outcomes in input order.
+ *
+ * Upstream is requested only up to downstream demand and never more than
+ * maxInFlight commands are requested and not yet published, so buffering is
+ * bounded. Commands are parsed on executor (bounded fan-out, rejected tasks
+ * run in caller) or in caller when executor is null. Parse exceptions are
+ * published as failed outcomes, upstream error is published after already
+ * received commands. Command is split by spaces as parseArguments(String)
+ * does, so "--" ends options (ParseResult.getRemainingArguments).
+ *
+ * Processor has one subscriber, parser is shared by parse() calls.
+ *
+ * @author strnadj
+ */
+public class OptParserProcessor implements Flow.Processor<String, OptParserProcessor.Outcome> {
+	/**
+	 * Parse outcome - result or failure of one command.
+	 */
+	public final static class Outcome {
+		/** Raw command. */
+		private final String command;
+
+		/** Parse result (null on failure). */
+		private final ParseResult result;
+
+		/** Parse exception (null on success). */
+		private final Exception failure;
+
+		Outcome(String command, ParseResult result, Exception failure) {
+			this.command = command;
+			this.result = result;
+			this.failure = failure;
+		}
+
+		/**
+		 * Return raw command.
+		 *
+		 * @return Command
+		 */
+		public String getCommand() {
+			return command;
+		}
+
+		/**
+		 * Is command parsed?
+		 *
+		 * @return True if its
+		 */
+		public boolean isSuccess() {
+			return failure == null;
+		}
+
+		/**
+		 * Return parse result.
+		 *
+		 * @return Result or null on failure
+		 */
+		public ParseResult getResult() {
+			return result;
+		}
+
+		/**
+		 * Return parse exception (MissingOptions, UnexpectedOption, ...).
+		 *
+		 * @return Exception or null on success
+		 */
+		public Exception getFailure() {
+			return failure;
+		}
+	}
+
+	/**
+	 * Command waiting for parse or publish.
+	 */
+	private final static class Task {
+		final String command;
+		volatile Outcome outcome;
+
+		Task(String command) {
+			this.command = command;
+		}
+	}
+
+	/** Shared parser. */
+	private final OptParser parser;
+
+	/** Executor or null. */
+	private final Executor executor;
+
+	/** Maximal count of requested and not published commands. */
+	private final int maxInFlight;
+
+	/** Tasks in input order. */
+	private final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<Task>();
+
+	/** Upstream subscription. */
+	private volatile Flow.Subscription upstream;
+
+	/** Downstream subscriber. */
+	private volatile Flow.Subscriber<? super Outcome> downstream;
+
+	/** Downstream demand (total, capped on Long.MAX_VALUE). */
+	private final AtomicLong requested = new AtomicLong();
+
+	/** Published outcomes and upstream requests (drain only). */
+	private long emitted = 0;
+	private long requestedUpstream = 0;
+
+	/** Upstream terminated? */
+	private volatile boolean done = false;
+	private volatile Throwable error;
+
+	/** Invalid downstream request, signalled by drain. */
+	private volatile Throwable invalidRequest;
+
+	/** Downstream cancelled or terminated? */
+	private volatile boolean cancelled = false;
+
+	/** Drain serialization. */
+	private final AtomicInteger wip = new AtomicInteger();
+
+	/**
+	 * Create processor parsing in caller thread.
+	 *
+	 * @param parser Shared parser
+	 * @param maxInFlight Maximal count of buffered commands
+	 */
+	public OptParserProcessor(OptParser parser, int maxInFlight) {
+		this(parser, null, maxInFlight);
+	}
+
+	/**
+	 * Create processor parsing on executor.
+	 *
+	 * @param parser Shared parser
+	 * @param executor Executor (null = caller thread)
+	 * @param maxInFlight Maximal count of commands requested and not published
+	 */
+	public OptParserProcessor(OptParser parser, Executor executor, int maxInFlight) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("Max in flight must be positive!");
+		}
+		this.parser = Objects.requireNonNull(parser);
+		this.executor = executor;
+		this.maxInFlight = maxInFlight;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Outcome> subscriber) {
+		Objects.requireNonNull(subscriber);
+		synchronized (this) {
+			if (downstream != null) {
+				subscriber.onSubscribe(new Flow.Subscription() {
+					public void request(long n) {}
+					public void cancel() {}
+				});
+				subscriber.onError(new IllegalStateException("Processor has already subscriber!"));
+				return;
+			}
+			downstream = subscriber;
+		}
+
+		subscriber.onSubscribe(new Flow.Subscription() {
+			public void request(long n) {
+				if (n <= 0) {
+					// Error is signalled by drain - never concurrently with onNext
+					invalidRequest = new IllegalArgumentException("Request must be positive: " + n);
+					upstreamCancel();
+					drain();
+					return;
+				}
+				requested.accumulateAndGet(n, (a, b) -> a + b < 0 ? Long.MAX_VALUE : a + b);
+				drain();
+			}
+
+			public void cancel() {
+				cancelled = true;
+				upstreamCancel();
+				drain();
+			}
+		});
+		drain();
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (upstream != null || cancelled || invalidRequest != null) {
+			subscription.cancel();
+			return;
+		}
+		upstream = subscription;
+		drain();
+	}
+
+	@Override
+	public void onNext(String command) {
+		Task task = new Task(command);
+		tasks.offer(task);
+
+		if (executor == null) {
+			task.outcome = parse(command);
+		} else {
+			try {
+				executor.execute(() -> {
+					task.outcome = parse(command);
+					drain();
+				});
+				return;
+			} catch (RejectedExecutionException e) {
+				// Executor is full, parse in caller
+				task.outcome = parse(command);
+			}
+		}
+		drain();
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		error = throwable;
+		done = true;
+		drain();
+	}
+
+	@Override
+	public void onComplete() {
+		done = true;
+		drain();
+	}
+
+	/**
+	 * Parse one command.
+	 *
+	 * @param command Raw command
+	 *
+	 * @return Outcome
+	 */
+	private Outcome parse(String command) {
+		try {
+			return new Outcome(command, parser.parse(command.split(" ")), null);
+		} catch (Exception e) {
+			return new Outcome(command, null, e);
+		}
+	}
+
+	/**
+	 * Cancel upstream subscription.
+	 */
+	private void upstreamCancel() {
+		Flow.Subscription s = upstream;
+		if (s != null) {
+			s.cancel();
+		}
+	}
+
+	/**
+	 * Publish parsed outcomes in order and request more commands.
+	 */
+	private void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+
+		int missed = 1;
+		do {
+			Flow.Subscriber<? super Outcome> subscriber = downstream;
+			Flow.Subscription subscription = upstream;
+
+			if (cancelled) {
+				tasks.clear();
+			} else if (subscriber != null) {
+				long demand = requested.get();
+
+				// Publish completed head tasks
+				Task head;
+				while (emitted != demand && invalidRequest == null && (head = tasks.peek()) != null && head.outcome != null) {
+					tasks.poll();
+					emitted++;
+					subscriber.onNext(head.outcome);
+					if (cancelled) {
+						break;
+					}
+				}
+
+				Throwable invalid = invalidRequest;
+				if (!cancelled && invalid != null) {
+					// Upstream is already cancelled by request
+					cancelled = true;
+					tasks.clear();
+					subscriber.onError(invalid);
+				} else if (!cancelled && done && tasks.isEmpty()) {
+					cancelled = true;
+					if (error != null) {
+						subscriber.onError(error);
+					} else {
+						subscriber.onComplete();
+					}
+				} else if (!cancelled && !done && subscription != null) {
+					// Bounded by demand and by count of commands in flight
+					long want = Math.min(maxInFlight - (requestedUpstream - emitted), demand - requestedUpstream);
+					if (want > 0) {
+						requestedUpstream += want;
+						subscription.request(want);
+					}
+				}
+			}
+
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+}
@@ -0,0 +1,118 @@
+package com.strnadj.OptParser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU registry of built parsers keyed by specification fingerprint.
+ *
+ * Same specification returns shared parser instance, least recently used
+ * parsers are evicted when registry is full. parseArguments stores results in
+ * parser instance (values of previous parse are forgotten), so shared parser
+ * must not be used by more threads at once - use parse() which returns own
+ * result for concurrent jobs.
+ *
+ * @author strnadj
+ */
+public class OptParserRegistry {
+	/** Maximal count of parsers. */
+	private final int maxSize;
+
+	/** Parsers by fingerprint (access order = LRU). */
+	private final LinkedHashMap<String, OptParser> parsers;
+
+	/** Statistics. */
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Create registry.
+	 *
+	 * @param maxSize Maximal count of parsers
+	 */
+	public OptParserRegistry(final int maxSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("Registry size must be positive!");
+		}
+
+		this.maxSize = maxSize;
+		this.parsers = new LinkedHashMap<String, OptParser>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, OptParser> eldest) {
+				if (size() > OptParserRegistry.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Return shared parser for specification (build it when missing).
+	 *
+	 * @param spec Specification
+	 *
+	 * @return Option parser
+	 */
+	public synchronized OptParser get(OptParserSpec spec) {
+		String fingerprint = spec.fingerprint();
+
+		OptParser parser = parsers.get(fingerprint);
+		if (parser != null) {
+			hits++;
+			return parser;
+		}
+
+		misses++;
+		parser = spec.build();
+		parsers.put(fingerprint, parser);
+		return parser;
+	}
+
+	/**
+	 * Count of returned cached parsers.
+	 *
+	 * @return Hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Count of built parsers.
+	 *
+	 * @return Misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Count of evicted parsers.
+	 *
+	 * @return Evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Count of cached parsers.
+	 *
+	 * @return Size
+	 */
+	public synchronized int size() {
+		return parsers.size();
+	}
+
+	/**
+	 * Remove all parsers (statistics are kept).
+	 */
+	public synchronized void clear() {
+		parsers.clear();
+	}
+}
@@ -0,0 +1,404 @@
+package com.strnadj.OptParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.strnadj.OptParser.exceptions.OverlapingBracketsException;
+
+/**
+ * Option parser specification - definition stored as data.
+ *
+ * Has same fluent interface as OptParser, but only records definitions,
+ * parser is created by build(). Specifications with same definitions are
+ * equal (by fingerprint), so they can be used as keys of OptParserRegistry.
+ *
+ * @author strnadj
+ */
+public class OptParserSpec {
+	/** Entry kinds. */
+	private final static int OPTION = 1;
+	private final static int EXPRESSION = 2;
+	private final static int CONSTRAINT = 3;
+	private final static int REQUIRES = 4;
+
+	/**
+	 * One recorded definition.
+	 */
+	private final static class Entry {
+		/** Entry kind. */
+		final int kind;
+
+		/** Short name. */
+		final int shortName;
+
+		/** Full name. */
+		final String fullName;
+
+		/** Type, value type or arity, constraint type. */
+		final int type;
+		final int valueType;
+
+		/** Default value. */
+		final String defaultValue;
+
+		/** Description. */
+		final String description;
+
+		/** Names for constraints. */
+		final String [] names;
+
+		Entry(int kind, int shortName, String fullName, int type, int valueType, String defaultValue, String description, String [] names) {
+			this.kind = kind;
+			this.shortName = shortName;
+			this.fullName = fullName;
+			this.type = type;
+			this.valueType = valueType;
+			this.defaultValue = defaultValue;
+			this.description = description;
+			this.names = names;
+		}
+	}
+
+	/** Command name. */
+	private final String commandName;
+
+	/** Command description. */
+	private final String commandDescription;
+
+	/** Recorded definitions. */
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	/** Cached fingerprint. */
+	private String fingerprint;
+
+	/**
+	 * Factory method returns instance of specification.
+	 *
+	 * @param cmdName Command name
+	 * @param cmdDesc Command description
+	 *
+	 * @return Specification
+	 */
+	public static OptParserSpec createSpec(String cmdName, String cmdDesc) {
+		return new OptParserSpec(cmdName, cmdDesc);
+	}
+
+	/**
+	 * Load specification from definition file (UTF-8).
+	 *
+	 * @param file Definition file
+	 *
+	 * @throws IOException Read failure
+	 *
+	 * @return Specification
+	 *
+	 * @see #fromDefinition(List)
+	 */
+	public static OptParserSpec load(Path file) throws IOException {
+		return fromDefinition(Files.readAllLines(file, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Create specification from definition lines, values with spaces are quoted:
+	 *
+	 *  # comment
+	 *  command cp "Copy files"
+	 *  option v verbose optional "" "Verbose output"
+	 *  value t target required . "Target directory"
+	 *  expression files optional "" "Files" variadic
+	 *  constraint exactly-one verbose quiet
+	 *  requires target files
+	 *
+	 * @param lines Definition lines
+	 *
+	 * @throws IllegalArgumentException Invalid definition (with line number)
+	 *
+	 * @return Specification
+	 */
+	public static OptParserSpec fromDefinition(List<String> lines) {
+		OptParserSpec spec = null;
+
+		for (int n = 0; n < lines.size(); n++) {
+			List<String> t = definitionTokens(lines.get(n), n + 1);
+			if (t.isEmpty() || t.get(0).startsWith("#")) {
+				continue;
+			}
+
+			String kind = t.get(0);
+			if (spec == null) {
+				if (!kind.equals("command") || t.size() != 3) {
+					throw definitionError(n + 1, "first definition must be: command name description");
+				}
+				spec = createSpec(t.get(1), t.get(2));
+				continue;
+			}
+
+			switch (kind) {
+			case "option":
+			case "value":
+				if (t.size() != 6 || t.get(1).codePointCount(0, t.get(1).length()) != 1) {
+					throw definitionError(n + 1, kind + " short full required|optional default description");
+				}
+				spec.addOption(t.get(1).codePointAt(0), t.get(2), definitionType(t.get(3), n + 1), t.get(4), t.get(5),
+						kind.equals("option") ? OptParser.OPTION_NO_VALUE : OptParser.OPTION_VALUE_IS_REQUIRED);
+				break;
+			case "expression":
+				if (t.size() != 5 && !(t.size() == 6 && t.get(5).equals("variadic"))) {
+					throw definitionError(n + 1, "expression full required|optional default description [variadic]");
+				}
+				spec.addPathOrExpression(t.get(1), definitionType(t.get(2), n + 1), t.get(3), t.get(4),
+						t.size() == 6 ? OptParser.EXPRESSION_VARIADIC : OptParser.EXPRESSION_SINGLE);
+				break;
+			case "constraint":
+				if (t.size() < 3) {
+					throw definitionError(n + 1, "constraint exactly-one|at-most-one|at-least-one names...");
+				}
+				int type;
+				switch (t.get(1)) {
+				case "exactly-one":
+					type = OptParser.CONSTRAINT_EXACTLY_ONE;
+					break;
+				case "at-most-one":
+					type = OptParser.CONSTRAINT_AT_MOST_ONE;
+					break;
+				case "at-least-one":
+					type = OptParser.CONSTRAINT_AT_LEAST_ONE;
+					break;
+				default:
+					throw definitionError(n + 1, "unknown constraint " + t.get(1));
+				}
+				spec.addConstraint(type, t.subList(2, t.size()).toArray(new String[0]));
+				break;
+			case "requires":
+				if (t.size() < 3) {
+					throw definitionError(n + 1, "requires full names...");
+				}
+				spec.addRequires(t.get(1), t.subList(2, t.size()).toArray(new String[0]));
+				break;
+			default:
+				throw definitionError(n + 1, "unknown definition " + kind);
+			}
+		}
+
+		if (spec == null) {
+			throw new IllegalArgumentException("Definition has no command!");
+		}
+		return spec;
+	}
+
+	/**
+	 * Split definition line to values (quotes are joined and stripped).
+	 *
+	 * @param line Line
+	 * @param n Line number
+	 *
+	 * @return Values
+	 */
+	private static List<String> definitionTokens(String line, int n) {
+		List<String> ret = new ArrayList<String>();
+		Tokenizer tokenizer = new Tokenizer(new String[] {line});
+		try {
+			String token;
+			while ((token = tokenizer.nextToken()) != null) {
+				String value = OptParser.pathOrExpressionValue(token);
+				if (value != null) {
+					ret.add(value);
+				}
+			}
+		} catch (OverlapingBracketsException e) {
+			throw definitionError(n, e.getMessage());
+		}
+		return ret;
+	}
+
+	/**
+	 * Return option type of definition value.
+	 */
+	private static int definitionType(String type, int n) {
+		if (type.equals("required")) {
+			return OptParser.REQUIRED;
+		}
+		if (type.equals("optional")) {
+			return OptParser.OPTIONAL;
+		}
+		throw definitionError(n, "type must be required or optional, not " + type);
+	}
+
+	/**
+	 * Create definition error.
+	 */
+	private static IllegalArgumentException definitionError(int n, String message) {
+		return new IllegalArgumentException(String.format("Definition line %d: %s", n, message));
+	}
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param name Command name
+	 * @param desc Command description
+	 */
+	public OptParserSpec(String name, String desc) {
+		this.commandName = name;
+		this.commandDescription = desc;
+	}
+
+	/**
+	 * Add record.
+	 *
+	 * @param e Entry
+	 *
+	 * @return Self
+	 */
+	private OptParserSpec add(Entry e) {
+		entries.add(e);
+		fingerprint = null;
+		return this;
+	}
+
+	/**
+	 * @see OptParser#addOption(int, String, int, String, String)
+	 */
+	public OptParserSpec addOption(int shortName, String fullName, int type, String defaultValue, String description) {
+		return addOption(shortName, fullName, type, defaultValue, description, OptParser.OPTION_NO_VALUE);
+	}
+
+	/**
+	 * @see OptParser#addOptionRequiredValue(int, String, int, String, String)
+	 */
+	public OptParserSpec addOptionRequiredValue(int shortName, String fullName, int type, String defaultValue, String description) {
+		return addOption(shortName, fullName, type, defaultValue, description, OptParser.OPTION_VALUE_IS_REQUIRED);
+	}
+
+	/**
+	 * @see OptParser#addOption(int, String, int, String, String, int)
+	 */
+	public OptParserSpec addOption(int shortName, String fullName, int type, String defaultValue, String description, int valueType) {
+		return add(new Entry(OPTION, shortName, fullName, type, valueType, defaultValue, description, null));
+	}
+
+	/**
+	 * @see OptParser#addPathOrExpression(String, int, String, String)
+	 */
+	public OptParserSpec addPathOrExpression(String fullName, int type, String defaultValue, String description) {
+		return addPathOrExpression(fullName, type, defaultValue, description, OptParser.EXPRESSION_SINGLE);
+	}
+
+	/**
+	 * @see OptParser#addPathOrExpression(String, int, String, String, int)
+	 */
+	public OptParserSpec addPathOrExpression(String fullName, int type, String defaultValue, String description, int arity) {
+		return add(new Entry(EXPRESSION, '\0', fullName, type, arity, defaultValue, description, null));
+	}
+
+	/**
+	 * @see OptParser#addConstraint(int, String...)
+	 */
+	public OptParserSpec addConstraint(int type, String... fullNames) {
+		return add(new Entry(CONSTRAINT, '\0', null, type, 0, null, null, fullNames.clone()));
+	}
+
+	/**
+	 * @see OptParser#addRequires(String, String...)
+	 */
+	public OptParserSpec addRequires(String fullName, String... requiredNames) {
+		return add(new Entry(REQUIRES, '\0', fullName, 0, 0, null, null, requiredNames.clone()));
+	}
+
+	/**
+	 * Create new option parser from specification.
+	 *
+	 * @return Option parser
+	 */
+	public OptParser build() {
+		OptParser parser = OptParser.createOptionParser(commandName, commandDescription);
+
+		for (Entry e : entries) {
+			switch (e.kind) {
+			case OPTION:
+				parser.addOption(e.shortName, e.fullName, e.type, e.defaultValue, e.description, e.valueType);
+				break;
+			case EXPRESSION:
+				parser.addPathOrExpression(e.fullName, e.type, e.defaultValue, e.description, e.valueType);
+				break;
+			case CONSTRAINT:
+				parser.addConstraint(e.type, e.names);
+				break;
+			case REQUIRES:
+				parser.addRequires(e.fullName, e.names);
+				break;
+			}
+		}
+
+		return parser;
+	}
+
+	/**
+	 * Return fingerprint - canonical form of all definitions.
+	 *
+	 * @return Fingerprint
+	 */
+	public String fingerprint() {
+		if (fingerprint == null) {
+			StringBuilder ret = new StringBuilder(64 + entries.size() * 32);
+			append(ret, commandName);
+			append(ret, commandDescription);
+
+			for (Entry e : entries) {
+				ret.append(e.kind).append(':').append(e.shortName).append(':')
+					.append(e.type).append(':').append(e.valueType).append(':');
+				append(ret, e.fullName);
+				append(ret, e.defaultValue);
+				append(ret, e.description);
+				if (e.names != null) {
+					ret.append(e.names.length).append(':');
+					for (String name : e.names) {
+						append(ret, name);
+					}
+				}
+				ret.append(';');
+			}
+			fingerprint = ret.toString();
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Append length prefixed string (null is -1).
+	 *
+	 * @param sb Builder
+	 * @param s String
+	 */
+	private static void append(StringBuilder sb, String s) {
+		if (s == null) {
+			sb.append("-1:");
+		} else {
+			sb.append(s.length()).append(':').append(s);
+		}
+	}
+
+	/**
+	 * Specifications are equal when fingerprints are equal.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof OptParserSpec)) {
+			return false;
+		}
+		return fingerprint().equals(((OptParserSpec) o).fingerprint());
+	}
+
+	/**
+	 * Hash code of fingerprint.
+	 */
+	@Override
+	public int hashCode() {
+		return fingerprint().hashCode();
+	}
+}
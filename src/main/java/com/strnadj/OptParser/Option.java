@@ -1,5 +1,10 @@
 package com.strnadj.OptParser;
 
+import java.util.Collections;
+import java.util.List;
+
+import com.strnadj.OptParser.exceptions.InvalidOptionValue;
+
 /** 
  * Class for storing objects and values 
  * - contains shortcut, full, options and default values.
@@ -10,8 +15,8 @@ public class Option implements Comparable<Option> {
 	/** Type - default is required. */
 	private int type = OptParser.REQUIRED;
 	
-	/** Short option name. */
-	private char shortName = 'a';
+	/** Short option name (code point). */
+	private int shortName = 'a';
 	
 	/** Full option name. */
 	private String fullName = "";
@@ -34,6 +39,18 @@ public class Option implements Comparable<Option> {
 	/** Value. */
 	private String value = "";
 	
+	/** Values of variadic path or expression. */
+	private List<String> values = Collections.emptyList();
+	
+	/** Variadic path or expression?! */
+	private boolean variadic = false;
+	
+	/** Dense id assigned by parser (-1 when not registered). */
+	private int id = -1;
+	
+	/** Value converter (null when not registered). */
+	private MemoizedConverter<?> converter;
+	
 	/**
 	 * Default option with specification of required values.
 	 * 
@@ -45,6 +62,23 @@ public class Option implements Comparable<Option> {
 	 * @param requiredValue Required value?
 	 */
 	public Option(final char shortName, final String fullName, final String defaultValue, final int type, final String description, final int requiredValue) {
+		this((int) shortName, fullName, defaultValue, type, description, requiredValue);
+	}
+	
+	/**
+	 * Option with short name as code point (any unicode char, ex. emoji).
+	 * 
+	 * @param shortName Shortcut code point
+	 * @param fullName Full name 
+	 * @param defaultValue Default value
+	 * @param type Option type
+	 * @param description Description
+	 * @param requiredValue Required value?
+	 */
+	public Option(final int shortName, final String fullName, final String defaultValue, final int type, final String description, final int requiredValue) {
+		if (!Character.isValidCodePoint(shortName)) {
+			throw new IllegalArgumentException("Invalid short name code point: " + shortName);
+		}
 		this.shortName 	   = shortName;
 		this.fullName  	   = fullName;
 		this.defaultValue  = defaultValue;
@@ -77,11 +111,53 @@ public class Option implements Comparable<Option> {
 	 * @param description Description
 	 */
 	public Option(String fullName, int type, String defaultValue, int position, String description) {
+		this(fullName, type, defaultValue, position, description, false);
+	}
+	
+	/**
+	 * Path or expression option, possibly variadic.
+	 * 
+	 * @param fullName Full name
+	 * @param type Option type 
+	 * @param defaultValue Default value
+	 * @param position Position
+	 * @param description Description
+	 * @param variadic Takes any number of values?
+	 */
+	public Option(String fullName, int type, String defaultValue, int position, String description, boolean variadic) {
 		this.fullName = fullName;
 		this.defaultValue = defaultValue;
 		this.POSITION = position;
 		this.description  = description;
 		this.type = type;
+		this.variadic = variadic;
+	}
+	
+	/**
+	 * Copy of definition (id and converter included) without parsed values.
+	 * 
+	 * @param o Option
+	 */
+	private Option(Option o) {
+		this.type = o.type;
+		this.shortName = o.shortName;
+		this.fullName = o.fullName;
+		this.defaultValue = o.defaultValue;
+		this.POSITION = o.POSITION;
+		this.description = o.description;
+		this.requiredValue = o.requiredValue;
+		this.variadic = o.variadic;
+		this.id = o.id;
+		this.converter = o.converter;
+	}
+	
+	/**
+	 * Copy definition for parsed values of shared option (used by parser).
+	 * 
+	 * @return Copy
+	 */
+	Option copy() {
+		return new Option(this);
 	}
 	
 	/**
@@ -108,6 +184,15 @@ public class Option implements Comparable<Option> {
 		this.filled = true;
 	}
 	
+	/**
+	 * Forget parsed value (used by parser before next parse).
+	 */
+	void reset() {
+		this.filled = false;
+		this.value = "";
+		this.values = Collections.emptyList();
+	}
+	
 	/**
 	 * Return value (if is not filled return default value!)
 	 * 
@@ -120,6 +205,15 @@ public class Option implements Comparable<Option> {
 		return this.value;
 	}
 	
+	/**
+	 * Return default value.
+	 * 
+	 * @return Default value
+	 */
+	public String getDefaultValue() {
+		return this.defaultValue;
+	}
+	
 	/** 
 	 * Return actual value (always return value no default!).
 	 * 
@@ -137,6 +231,105 @@ public class Option implements Comparable<Option> {
 		this.value = value;
 	}
 	
+	/**
+	 * Return dense option id assigned by parser.
+	 * 
+	 * @return Option id or -1
+	 */
+	public int getId() {
+		return this.id;
+	}
+	
+	/**
+	 * Set dense option id (used by parser).
+	 * 
+	 * @param id Option id
+	 */
+	void setId(int id) {
+		this.id = id;
+	}
+	
+	/**
+	 * Return value converter.
+	 * 
+	 * @return Converter or null
+	 */
+	public MemoizedConverter<?> getConverter() {
+		return this.converter;
+	}
+	
+	/**
+	 * Set value converter (used by parser).
+	 * 
+	 * @param converter Converter
+	 */
+	void setConverter(MemoizedConverter<?> converter) {
+		this.converter = converter;
+	}
+	
+	/**
+	 * Convert raw value by registered converter.
+	 * 
+	 * @param value Raw value
+	 * 
+	 * @throws InvalidOptionValue No converter or conversion failed
+	 * 
+	 * @return Converted value, null for null value
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T convert(String value) throws InvalidOptionValue {
+		if (converter == null) {
+			throw new InvalidOptionValue(String.format("Option %s has no converter!", this.fullName));
+		}
+		if (value == null) {
+			return null;
+		}
+		try {
+			return (T) converter.convert(value);
+		} catch (Exception e) {
+			throw new InvalidOptionValue(String.format("Invalid value of option %s: %s", this.fullName, value), e);
+		}
+	}
+	
+	/**
+	 * Return converted value (or converted default value).
+	 * 
+	 * @throws InvalidOptionValue No converter or conversion failed
+	 * 
+	 * @return Converted value
+	 */
+	public <T> T getConvertedValue() throws InvalidOptionValue {
+		return convert(value());
+	}
+	
+	/**
+	 * Is path or expression variadic?
+	 * 
+	 * @return True if its
+	 */
+	public boolean isVariadic() {
+		return this.variadic;
+	}
+	
+	/**
+	 * Return values of variadic path or expression (read-only view).
+	 * 
+	 * @return List of values, empty when not filled
+	 */
+	public List<String> getValues() {
+		return this.values;
+	}
+	
+	/**
+	 * Set values of variadic path or expression, first value is also set as value.
+	 * 
+	 * @param values List of values
+	 */
+	public void setValues(List<String> values) {
+		this.values = values;
+		this.value = values.isEmpty() ? "" : values.get(0);
+	}
+	
 	/**
 	 * Get type of option.
 	 * @return Option type
@@ -146,10 +339,18 @@ public class Option implements Comparable<Option> {
 	}
 	
 	/**
-	 * Return option shortcut.
+	 * Return option shortcut (for code points outside BMP returns high surrogate).
 	 * @return Option shortcut
 	 */
 	public char getShortName() {
+		return Character.isBmpCodePoint(this.shortName) ? (char) this.shortName : Character.highSurrogate(this.shortName);
+	}
+	
+	/**
+	 * Return option shortcut as code point.
+	 * @return Option shortcut code point
+	 */
+	public int getShortNameCodePoint() {
 		return this.shortName;
 	}
 	
@@ -184,7 +385,7 @@ public class Option implements Comparable<Option> {
 	 * @return True if options are same 
 	 */
 	public boolean equals(Option aOption) {
-		if (this.shortName == aOption.getShortName() || this.fullName == aOption.getFullName()) {
+		if (this.shortName == aOption.getShortNameCodePoint() || this.fullName == aOption.getFullName()) {
 			return true;
 		}
 		return false;
@@ -203,8 +404,8 @@ public class Option implements Comparable<Option> {
 			} else {
 				return -1;
 			}
-		} else if (this.shortName != o.getShortName()) {
-			return (int) this.shortName - (int) o.getShortName();
+		} else if (this.shortName != o.getShortNameCodePoint()) {
+			return this.shortName - o.getShortNameCodePoint();
 		} else {
 			return this.fullName.compareTo(o.getFullName());
 		}
@@ -0,0 +1,76 @@
+package com.strnadj.OptParser;
+
+/**
+ * Constraint over options compiled to bitmasks of option ids.
+ * 
+ * @author strnadj
+ */
+final class OptionConstraint {
+	/** Constraint type (OptParser.CONSTRAINT_*). */
+	final int type;
+	
+	/** Mask of constrained options. */
+	final long[] mask;
+	
+	/** Mask of trigger option (only for requires). */
+	final long[] trigger;
+	
+	/** Human readable description for error message. */
+	final String description;
+	
+	/**
+	 * Create constraint.
+	 * 
+	 * @param type Constraint type
+	 * @param mask Mask of constrained options
+	 * @param trigger Mask of trigger option or null
+	 * @param description Description
+	 */
+	OptionConstraint(int type, long[] mask, long[] trigger, String description) {
+		this.type = type;
+		this.mask = mask;
+		this.trigger = trigger;
+		this.description = description;
+	}
+	
+	/**
+	 * Count of filled options from mask.
+	 * 
+	 * @param bits Mask
+	 * @param filledMask Mask of filled options
+	 * 
+	 * @return Count of filled options
+	 */
+	private static int count(long[] bits, long[] filledMask) {
+		int count = 0;
+		int length = Math.min(bits.length, filledMask.length);
+		for (int i = 0; i < length; i++) {
+			count += Long.bitCount(bits[i] & filledMask[i]);
+		}
+		return count;
+	}
+	
+	/**
+	 * Is constraint satisfied?
+	 * 
+	 * @param filledMask Mask of filled options
+	 * 
+	 * @return True if its
+	 */
+	boolean isSatisfied(long[] filledMask) {
+		int filled = count(mask, filledMask);
+		
+		switch (type) {
+		case OptParser.CONSTRAINT_EXACTLY_ONE:
+			return filled == 1;
+		case OptParser.CONSTRAINT_AT_MOST_ONE:
+			return filled <= 1;
+		case OptParser.CONSTRAINT_AT_LEAST_ONE:
+			return filled >= 1;
+		case OptParser.CONSTRAINT_REQUIRES:
+			return count(trigger, filledMask) == 0 || filled == count(mask, mask);
+		default:
+			return true;
+		}
+	}
+}
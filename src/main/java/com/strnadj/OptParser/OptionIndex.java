@@ -0,0 +1,194 @@
+package com.strnadj.OptParser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact index of option definitions - options by dense id, in definition
+ * order (help, full name lookup) and by short name, kept in plain arrays.
+ *
+ * Index of option set is referenced by every parser created from it and
+ * copied when parser (or set) adds next option (copy on write).
+ *
+ * @author strnadj
+ */
+final class OptionIndex {
+	/** Options by dense id. */
+	Option[] byId;
+	int count = 0;
+
+	/** Options ordered by compareTo (equal options are kept once). */
+	Option[] sorted;
+	int sortedCount = 0;
+
+	/** Options by ASCII short name (created with first option). */
+	Option[] asciiShortNames;
+
+	/** Options by other short names (code points) or null. */
+	Map<Integer, Option> otherShortNames;
+
+	/** Bitmask of required options (bit = option id). */
+	long[] requiredMask = new long[1];
+
+	/** Longest full name of option (help). */
+	int maxFullNameLength = 0;
+
+	/** Referenced by more owners, must be copied before change. */
+	boolean shared = false;
+
+	/**
+	 * Create empty index.
+	 *
+	 * @param capacity Expected count of options
+	 */
+	OptionIndex(int capacity) {
+		this.byId = new Option[capacity];
+		this.sorted = new Option[capacity];
+	}
+
+	/**
+	 * Copy index for change (options are not copied).
+	 *
+	 * @return Private copy
+	 */
+	OptionIndex copy() {
+		OptionIndex ret = new OptionIndex(0);
+		ret.byId = Arrays.copyOf(byId, count + 4);
+		ret.count = count;
+		ret.sorted = Arrays.copyOf(sorted, sortedCount + 4);
+		ret.sortedCount = sortedCount;
+		ret.asciiShortNames = asciiShortNames == null ? null : asciiShortNames.clone();
+		ret.otherShortNames = otherShortNames == null ? null : new HashMap<Integer, Option>(otherShortNames);
+		ret.requiredMask = requiredMask.clone();
+		ret.maxFullNameLength = maxFullNameLength;
+		return ret;
+	}
+
+	/**
+	 * Assign dense id to option and index it.
+	 *
+	 * @param o Option
+	 */
+	void add(Option o) {
+		int id = count;
+		o.setId(id);
+		if (count == byId.length) {
+			byId = Arrays.copyOf(byId, Math.max(4, count + (count >> 1)));
+		}
+		byId[count++] = o;
+
+		// Grow mask when needed
+		if ((id >>> 6) >= requiredMask.length) {
+			requiredMask = Arrays.copyOf(requiredMask, requiredMask.length * 2);
+		}
+
+		if (o.isRequired()) {
+			requiredMask[id >>> 6] |= 1L << id;
+		}
+
+		// Same as definition set - equal option is not added twice
+		int pos = Arrays.binarySearch(sorted, 0, sortedCount, o);
+		if (pos < 0) {
+			pos = -pos - 1;
+			if (sortedCount == sorted.length) {
+				sorted = Arrays.copyOf(sorted, Math.max(4, sortedCount + (sortedCount >> 1)));
+			}
+			System.arraycopy(sorted, pos, sorted, pos + 1, sortedCount - pos);
+			sorted[pos] = o;
+			sortedCount++;
+		}
+
+		if (o.POSITION == -1) {
+			indexShortName(o);
+
+			// Count variables of lenght for output
+			if (o.getFullName().length() > maxFullNameLength) {
+				maxFullNameLength = o.getFullName().length();
+			}
+		}
+	}
+
+	/**
+	 * Replace option by its changed copy (same id and names).
+	 *
+	 * @param o Indexed option
+	 * @param copy Copy of option
+	 */
+	void replace(Option o, Option copy) {
+		byId[o.getId()] = copy;
+		for (int i = 0; i < sortedCount; i++) {
+			if (sorted[i] == o) {
+				sorted[i] = copy;
+				break;
+			}
+		}
+
+		int shortName = o.getShortNameCodePoint();
+		if (o.POSITION != -1) {
+			return;
+		}
+		if (shortName < 128) {
+			if (asciiShortNames != null && asciiShortNames[shortName] == o) {
+				asciiShortNames[shortName] = copy;
+			}
+		} else if (otherShortNames != null && otherShortNames.get(shortName) == o) {
+			otherShortNames.put(shortName, copy);
+		}
+	}
+
+	/**
+	 * Index option by short name, when short names are same the first option
+	 * in sorted order (Option.compareTo) wins.
+	 *
+	 * @param o Option
+	 */
+	private void indexShortName(Option o) {
+		int shortName = o.getShortNameCodePoint();
+		Option actual = byShortName(shortName);
+
+		if (actual == null || o.compareTo(actual) < 0) {
+			if (shortName < 128) {
+				if (asciiShortNames == null) {
+					asciiShortNames = new Option[128];
+				}
+				asciiShortNames[shortName] = o;
+			} else {
+				if (otherShortNames == null) {
+					otherShortNames = new HashMap<Integer, Option>();
+				}
+				otherShortNames.put(shortName, o);
+			}
+		}
+	}
+
+	/**
+	 * Return option by short name (ASCII by array index, rest by hash).
+	 *
+	 * @param shortName Short name code point
+	 *
+	 * @return Option or null
+	 */
+	Option byShortName(int shortName) {
+		if (shortName < 128) {
+			return asciiShortNames == null ? null : asciiShortNames[shortName];
+		}
+		return otherShortNames == null ? null : otherShortNames.get(shortName);
+	}
+
+	/**
+	 * Return first option (in sorted order, Option.compareTo) by full name.
+	 *
+	 * @param fullName Full name
+	 *
+	 * @return Option or null
+	 */
+	Option byFullName(String fullName) {
+		for (int i = 0; i < sortedCount; i++) {
+			if (sorted[i].getFullName().equals(fullName)) {
+				return sorted[i];
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,56 @@
+package com.strnadj.OptParser;
+
+/**
+ * Typed handle of option - reads of parse result by key are bitset and array
+ * accesses by dense option id, no name is hashed or compared.
+ *
+ * Key is valid for parser which created it and for parsers sharing the same
+ * option set definition.
+ *
+ * @author strnadj
+ */
+public final class OptionKey<T> {
+	/** Option definition. */
+	final Option option;
+
+	/** Dense option id. */
+	final int id;
+
+	/** Value is converted by option converter? */
+	final boolean converted;
+
+	/**
+	 * Create key.
+	 *
+	 * @param option Registered option
+	 * @param converted Value is converted by option converter?
+	 */
+	OptionKey(Option option, boolean converted) {
+		this.option = option;
+		this.id = option.getId();
+		this.converted = converted;
+	}
+
+	/**
+	 * Return dense option id.
+	 *
+	 * @return Option id
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Return full name of option.
+	 *
+	 * @return Full name
+	 */
+	public String getFullName() {
+		return option.getFullName();
+	}
+
+	@Override
+	public String toString() {
+		return option.getFullName() + "#" + id;
+	}
+}
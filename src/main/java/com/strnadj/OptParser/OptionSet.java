@@ -0,0 +1,136 @@
+package com.strnadj.OptParser;
+
+/**
+ * Shared option definitions - defined once and referenced by many parsers
+ * (ex. common --verbose, --format of every subcommand).
+ *
+ * Parser created from set references set definitions (same option ids in
+ * every parser), its own options and parsed values are kept in parser. Set
+ * changed later (options, converters) does not change already created parsers.
+ * Set contains only options, paths or expressions are added to parser.
+ * Converter registered in set is shared by all parsers created after it.
+ *
+ * @author strnadj
+ */
+public class OptionSet {
+	/** Definitions (copied on change when referenced by parser). */
+	private OptionIndex index = new OptionIndex(4);
+
+	/**
+	 * Factory method returns empty option set.
+	 *
+	 * @return Option set
+	 */
+	public static OptionSet create() {
+		return new OptionSet();
+	}
+
+	/**
+	 * Add option, return self for fluent interface.
+	 *
+	 * @param shortName Shortcut
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value
+	 * @param description Description
+	 *
+	 * @return Option set
+	 */
+	public OptionSet addOption(char shortName, String fullName, int type, String defaultValue, String description) {
+		return addOption((int) shortName, fullName, type, defaultValue, description, OptParser.OPTION_NO_VALUE);
+	}
+
+	/**
+	 * Add option with required value.
+	 *
+	 * @param shortName Shortcut
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value
+	 * @param description Description
+	 *
+	 * @return Option set
+	 */
+	public OptionSet addOptionRequiredValue(char shortName, String fullName, int type, String defaultValue, String description) {
+		return addOption((int) shortName, fullName, type, defaultValue, description, OptParser.OPTION_VALUE_IS_REQUIRED);
+	}
+
+	/**
+	 * Add option with short name as code point.
+	 *
+	 * @param shortName Shortcut code point
+	 * @param fullName Full name
+	 * @param type Optional or required?
+	 * @param defaultValue Default value
+	 * @param description Description
+	 * @param valueType Value type
+	 *
+	 * @return Option set
+	 */
+	public synchronized OptionSet addOption(int shortName, String fullName, int type, String defaultValue, String description, int valueType) {
+		if (index.shared) {
+			index = index.copy();
+		}
+		index.add(new Option(shortName, fullName, defaultValue, type, description, valueType));
+
+		return this;
+	}
+
+	/**
+	 * Register value converter with default cache size.
+	 *
+	 * @param fullName Full name of option
+	 * @param converter Converter
+	 *
+	 * @return Option set
+	 */
+	public <T> OptionSet addConverter(String fullName, ValueConverter<T> converter) {
+		return addConverter(fullName, converter, MemoizedConverter.DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Register value converter (shared by parsers created later, changed
+	 * option is copied when set is referenced by parser).
+	 *
+	 * @param fullName Full name of option
+	 * @param converter Converter
+	 * @param cacheSize Maximal count of cached values
+	 *
+	 * @return Option set
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized <T> OptionSet addConverter(String fullName, ValueConverter<T> converter, int cacheSize) {
+		Option o = index.byFullName(fullName);
+		if (o == null) {
+			throw new IllegalArgumentException(String.format("Option set - converter for undefined option %s!", fullName));
+		}
+		if (index.shared) {
+			index = index.copy();
+			Option copy = o.copy();
+			index.replace(o, copy);
+			o = copy;
+		}
+		o.setConverter(converter instanceof MemoizedConverter ? (MemoizedConverter<T>) converter : new MemoizedConverter<T>(converter, cacheSize));
+
+		return this;
+	}
+
+	/**
+	 * Return count of options.
+	 *
+	 * @return Count
+	 */
+	public synchronized int size() {
+		return index.count;
+	}
+
+	/**
+	 * Return definitions for new parser (marked as shared).
+	 *
+	 * @return Index
+	 */
+	synchronized OptionIndex share() {
+		index.shared = true;
+		return index;
+	}
+}
@@ -0,0 +1,400 @@
+package com.strnadj.OptParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.strnadj.OptParser.exceptions.OverlapingBracketsException;
+
+/**
+ * Speculative parallel tokenizer - same tokens and errors as Tokenizer, for very large inputs.
+ *
+ * Input (parameters joined by spaces, nothing is copied) is split in chunks,
+ * every chunk is tokenized in parallel three times - outside quotes, inside
+ * single and inside double quote. Escape parity and emptiness of token at
+ * chunk start are derived from preceding chars, so only quote mode is
+ * speculated. Chunks are then reconciled from the first one, each picks run
+ * started in end mode of previous chunk. Tokens are contiguous ranges of
+ * input, so they are materialized in parallel after reconciling.
+ *
+ * Inputs shorter than two chunks are tokenized sequentially.
+ *
+ * @author strnadj
+ */
+public final class ParallelTokenizer {
+	/** Default chunk size in chars. */
+	public final static int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/** Quote modes. */
+	private final static int MODE_OUT = 0;
+	private final static int MODE_SINGLE = 1;
+	private final static int MODE_DOUBLE = 2;
+
+	/** Token start markers. */
+	private final static int NONE = -1;
+	private final static int CARRY = -2;
+
+	/**
+	 * Result of tokenizing one chunk from assumed mode.
+	 */
+	private final static class Run {
+		/** Token ranges (start, end), start can be CARRY. */
+		int [] ranges = new int[16];
+		int count = 0;
+
+		/** Start of unfinished token at chunk end (NONE, CARRY or offset). */
+		int pending;
+
+		/** Mode at chunk end. */
+		int endMode;
+
+		/** First error or null. */
+		String error;
+
+		void emit(int start, int end) {
+			if (count * 2 == ranges.length) {
+				ranges = Arrays.copyOf(ranges, ranges.length * 2);
+			}
+			ranges[count * 2] = start;
+			ranges[count * 2 + 1] = end;
+			count++;
+		}
+	}
+
+	/** Source parameters. */
+	private final String [] params;
+
+	/** Offset of every parameter in joined input. */
+	private final int [] starts;
+
+	/** Length of joined input. */
+	private final int length;
+
+	/**
+	 * Index parameters.
+	 *
+	 * @param params Parameters
+	 * @param starts Offsets of parameters
+	 * @param length Length of joined input
+	 */
+	private ParallelTokenizer(String [] params, int [] starts, int length) {
+		this.params = params;
+		this.starts = starts;
+		this.length = length;
+	}
+
+	/**
+	 * Tokenize parameters with default chunk size.
+	 *
+	 * @param params Parameters
+	 *
+	 * @throws OverlapingBracketsException Parenthesses overleaps
+	 *
+	 * @return Tokens
+	 */
+	public static List<String> tokenize(String [] params) throws OverlapingBracketsException {
+		return tokenize(params, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Tokenize parameters.
+	 *
+	 * @param params Parameters
+	 * @param chunkSize Chunk size in chars
+	 *
+	 * @throws OverlapingBracketsException Parenthesses overleaps
+	 *
+	 * @return Tokens
+	 */
+	public static List<String> tokenize(String [] params, int chunkSize) throws OverlapingBracketsException {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("Chunk size must be positive!");
+		}
+
+		long length = params.length == 0 ? 0 : params.length - 1;
+		for (String p : params) {
+			length += p.length();
+		}
+
+		if (length < 2L * chunkSize || length > Integer.MAX_VALUE) {
+			return sequential(params);
+		}
+
+		int [] starts = new int[params.length];
+		int offset = 0;
+		for (int i = 0; i < params.length; i++) {
+			starts[i] = offset;
+			offset += params[i].length() + 1;
+		}
+
+		return new ParallelTokenizer(params, starts, (int) length).run(chunkSize);
+	}
+
+	/**
+	 * Tokenize sequentially.
+	 *
+	 * @param params Parameters
+	 *
+	 * @throws OverlapingBracketsException Parenthesses overleaps
+	 *
+	 * @return Tokens
+	 */
+	private static List<String> sequential(String [] params) throws OverlapingBracketsException {
+		List<String> ret = new ArrayList<String>(params.length);
+		Tokenizer tokenizer = new Tokenizer(params);
+		String token;
+		while ((token = tokenizer.nextToken()) != null) {
+			ret.add(token);
+		}
+		return ret;
+	}
+
+	/**
+	 * Tokenize chunks, reconcile and materialize tokens.
+	 *
+	 * @param chunkSize Chunk size
+	 *
+	 * @throws OverlapingBracketsException Parenthesses overleaps
+	 *
+	 * @return Tokens
+	 */
+	private List<String> run(int chunkSize) throws OverlapingBracketsException {
+		int chunks = (int) ((length + (long) chunkSize - 1) / chunkSize);
+		Run [][] runs = new Run[chunks][];
+
+		IntStream.range(0, chunks).parallel().forEach(k -> {
+			int from = k * chunkSize;
+			int to = (int) Math.min(length, (long) from + chunkSize);
+			// First chunk starts outside quotes, no speculation
+			runs[k] = k == 0
+					? new Run[] {tokenize(from, to, MODE_OUT)}
+					: new Run[] {tokenize(from, to, MODE_OUT), tokenize(from, to, MODE_SINGLE), tokenize(from, to, MODE_DOUBLE)};
+		});
+
+		// Reconcile - pick run by end mode of previous chunk, resolve carried token starts
+		Run [] chosen = new Run[chunks];
+		int [] firstToken = new int[chunks];
+		int mode = MODE_OUT;
+		int carry = NONE;
+		int tokens = 0;
+		for (int k = 0; k < chunks; k++) {
+			Run r = runs[k][mode];
+			runs[k] = null;
+			if (r.error != null) {
+				throw new OverlapingBracketsException(r.error);
+			}
+
+			if (r.count > 0 && r.ranges[0] == CARRY) {
+				r.ranges[0] = carry;
+			}
+			carry = r.pending == CARRY ? carry : r.pending;
+			mode = r.endMode;
+
+			chosen[k] = r;
+			firstToken[k] = tokens;
+			tokens += r.count;
+		}
+
+		if (mode == MODE_SINGLE) {
+			throw new OverlapingBracketsException("Single quoted bracket not closed!");
+		}
+
+		if (mode == MODE_DOUBLE) {
+			throw new OverlapingBracketsException("Double quoted bracket not closed!");
+		}
+
+		String [] ret = new String[tokens + (carry != NONE ? 1 : 0)];
+		if (carry != NONE) {
+			ret[tokens] = substring(carry, length);
+		}
+
+		IntStream.range(0, chunks).parallel().forEach(k -> {
+			Run r = chosen[k];
+			for (int i = 0; i < r.count; i++) {
+				ret[firstToken[k] + i] = substring(r.ranges[i * 2], r.ranges[i * 2 + 1]);
+			}
+		});
+
+		return Arrays.asList(ret);
+	}
+
+	/**
+	 * Index of parameter containing offset (boundary space belongs to previous parameter).
+	 *
+	 * @param offset Offset
+	 *
+	 * @return Parameter index
+	 */
+	private int paramAt(int offset) {
+		int i = Arrays.binarySearch(starts, offset);
+		return i >= 0 ? i : -i - 2;
+	}
+
+	/**
+	 * Char at offset of joined input.
+	 *
+	 * @param offset Offset
+	 *
+	 * @return Char
+	 */
+	private char charAt(int offset) {
+		int p = paramAt(offset);
+		int pos = offset - starts[p];
+		return pos < params[p].length() ? params[p].charAt(pos) : ' ';
+	}
+
+	/**
+	 * Part of joined input.
+	 *
+	 * @param from Start offset
+	 * @param to End offset
+	 *
+	 * @return String
+	 */
+	private String substring(int from, int to) {
+		int p = paramAt(from);
+		int pos = from - starts[p];
+		if (pos + (to - from) <= params[p].length()) {
+			return params[p].substring(pos, pos + (to - from));
+		}
+
+		StringBuilder sb = new StringBuilder(to - from);
+		for (int i = from; i < to; i++) {
+			if (pos < params[p].length()) {
+				sb.append(params[p].charAt(pos++));
+			} else {
+				sb.append(' ');
+				p++;
+				pos = 0;
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Count of backslashes right before offset.
+	 *
+	 * @param offset Offset
+	 *
+	 * @return Count
+	 */
+	private int escapesBefore(int offset) {
+		int i = offset - 1;
+		while (i >= 0 && charAt(i) == '\\') {
+			i--;
+		}
+		return offset - 1 - i;
+	}
+
+	/**
+	 * Is token empty at offset outside quotes? Derived from preceding chars - closing
+	 * quote or start leaves it empty, unescaped spaces toggle it (flush, or append
+	 * to empty token), anything else leaves it filled.
+	 *
+	 * @param offset Offset
+	 *
+	 * @return True if its
+	 */
+	private boolean emptyOutside(int offset) {
+		int i = offset - 1;
+		while (i >= 0 && charAt(i) == ' ') {
+			i--;
+		}
+		int spaces = offset - 1 - i;
+
+		boolean empty;
+		if (i < 0) {
+			empty = true;
+		} else {
+			char c = charAt(i);
+			if (c == '\\') {
+				empty = false;
+				if (spaces > 0 && escapesBefore(i + 1) % 2 == 1) {
+					// Escaped space is appended, token stays filled
+					spaces--;
+				}
+			} else if (c == '\'' || c == '"') {
+				// Outside quotes unescaped quote could only close
+				empty = escapesBefore(i) % 2 == 0;
+			} else {
+				empty = false;
+			}
+		}
+
+		return empty ^ (spaces % 2 == 1);
+	}
+
+	/**
+	 * Tokenize chunk from assumed mode (same automaton as Tokenizer).
+	 *
+	 * @param from Chunk start
+	 * @param to Chunk end
+	 * @param mode Assumed mode
+	 *
+	 * @return Run
+	 */
+	private Run tokenize(int from, int to, int mode) {
+		Run r = new Run();
+		int escaped = escapesBefore(from);
+		int tokenStart = mode != MODE_OUT || !emptyOutside(from) ? CARRY : NONE;
+
+		int p = paramAt(from);
+		int pos = from - starts[p];
+		String s = params[p];
+		DelimiterScanner scanner = DelimiterScanner.create();
+
+		for (int i = from; i < to; i++) {
+			char c;
+			if (pos < s.length()) {
+				c = s.charAt(pos++);
+			} else {
+				c = ' ';
+				s = params[++p];
+				pos = 0;
+			}
+
+			if (c == ' ' && escaped % 2 == 0 && mode == MODE_OUT && tokenStart != NONE) {
+				r.emit(tokenStart, i);
+				tokenStart = NONE;
+				escaped = 0;
+			} else if (c == '\\') {
+				escaped++;
+				if (tokenStart == NONE) {
+					tokenStart = i;
+				}
+			} else if ((c == '\'' || c == '"') && escaped % 2 == 0) {
+				int quote = c == '\'' ? MODE_SINGLE : MODE_DOUBLE;
+				if (mode == quote) {
+					mode = MODE_OUT;
+					r.emit(tokenStart, i + 1);
+					tokenStart = NONE;
+				} else if (mode != MODE_OUT) {
+					r.error = mode == MODE_DOUBLE ? "Quoted \" overleaping with '!" : "Quote ' overleaping with \"!";
+					break;
+				} else {
+					mode = quote;
+					if (tokenStart != NONE) {
+						r.emit(tokenStart, i);
+					}
+					tokenStart = i;
+				}
+				escaped = 0;
+			} else {
+				if (tokenStart == NONE) {
+					tokenStart = i;
+				}
+				escaped = 0;
+				
+				// Skip chars up to next delimiter (within chunk)
+				int end = scanner.indexOf(s, pos, Math.min(s.length(), pos + (to - i - 1)));
+				i += end - pos;
+				pos = end;
+			}
+		}
+
+		r.pending = tokenStart;
+		r.endMode = mode;
+		return r;
+	}
+}
@@ -0,0 +1,126 @@
+package com.strnadj.OptParser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of collect-all-errors parse - partial parse result and every problem found.
+ *
+ * @author strnadj
+ */
+public class ParseDiagnostics {
+	/**
+	 * One problem of parsed command.
+	 */
+	public final static class Diagnostic {
+		/** Token index (-1 for whole command, ex. missing options). */
+		private final int position;
+
+		/** Token or null. */
+		private final String token;
+
+		/** Exception which would be thrown by parse. */
+		private final Exception error;
+
+		Diagnostic(int position, String token, Exception error) {
+			this.position = position;
+			this.token = token;
+			this.error = error;
+		}
+
+		/**
+		 * Return token index (after joining quotes).
+		 *
+		 * @return Index or -1 for whole command
+		 */
+		public int getPosition() {
+			return position;
+		}
+
+		/**
+		 * Return token.
+		 *
+		 * @return Token or null
+		 */
+		public String getToken() {
+			return token;
+		}
+
+		/**
+		 * Return exception (UnexpectedOption, MissingOptionValue, UnknownAttribute, ...).
+		 *
+		 * @return Exception
+		 */
+		public Exception getError() {
+			return error;
+		}
+
+		/**
+		 * Return message.
+		 *
+		 * @return Message
+		 */
+		public String getMessage() {
+			return error.getMessage();
+		}
+
+		@Override
+		public String toString() {
+			return position + ": " + error.getClass().getSimpleName() + (token != null ? " " + token : "");
+		}
+	}
+
+	/** Partial result. */
+	private final ParseResult result;
+
+	/** Problems in order found (options, paths or expressions, whole command). */
+	private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+
+	/**
+	 * Create empty diagnostics.
+	 *
+	 * @param result Partial result
+	 */
+	ParseDiagnostics(ParseResult result) {
+		this.result = result;
+	}
+
+	/**
+	 * Add problem.
+	 *
+	 * @param position Token index
+	 * @param token Token or null
+	 * @param error Exception
+	 */
+	void add(int position, String token, Exception error) {
+		diagnostics.add(new Diagnostic(position, token, error));
+	}
+
+	/**
+	 * Return (partial) parse result - values of valid tokens.
+	 *
+	 * @return Result
+	 */
+	public ParseResult getResult() {
+		return result;
+	}
+
+	/**
+	 * Return all problems.
+	 *
+	 * @return Diagnostics
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		return Collections.unmodifiableList(diagnostics);
+	}
+
+	/**
+	 * Are there problems?
+	 *
+	 * @return True if there are
+	 */
+	public boolean hasErrors() {
+		return !diagnostics.isEmpty();
+	}
+}
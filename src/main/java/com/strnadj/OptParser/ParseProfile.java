@@ -0,0 +1,196 @@
+package com.strnadj.OptParser;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Parse profile - cumulative nanoseconds and call counts of parse stages.
+ *
+ * Counters are striped (LongAdder), so profiled parser can be shared by
+ * threads without contention. Registered as platform MBean by
+ * OptParser.enableProfiling(name).
+ *
+ * @author strnadj
+ */
+public class ParseProfile implements ParseProfileMBean {
+	/** Stages. */
+	public final static int STAGE_TOKENIZE = 0;
+	public final static int STAGE_HELP_SCAN = 1;
+	public final static int STAGE_OPTION_LOOKUP = 2;
+	public final static int STAGE_POSITIONAL_ASSIGNMENT = 3;
+	public final static int STAGE_VALIDATION = 4;
+	public final static int STAGE_EXCEPTION_FORMATTING = 5;
+	public final static int STAGE_HELP = 6;
+
+	/** Count of stages. */
+	private final static int STAGES = 7;
+
+	/** Profiles registered by parsers (by MBean name). */
+	private final static Map<ObjectName, ParseProfile> REGISTERED = new HashMap<ObjectName, ParseProfile>();
+
+	/** Nanoseconds by stage. */
+	private final LongAdder[] nanos = new LongAdder[STAGES];
+
+	/** Calls by stage. */
+	private final LongAdder[] counts = new LongAdder[STAGES];
+
+	/**
+	 * Create empty profile.
+	 */
+	public ParseProfile() {
+		for (int i = 0; i < STAGES; i++) {
+			nanos[i] = new LongAdder();
+			counts[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Register profile as platform MBean com.strnadj.OptParser:type=ParseProfile,name=(name),
+	 * registered profile with same name is replaced.
+	 *
+	 * @param name Parser name
+	 *
+	 * @return MBean name
+	 */
+	ObjectName register(String name) {
+		synchronized (REGISTERED) {
+			try {
+				ObjectName on = new ObjectName("com.strnadj.OptParser:type=ParseProfile,name=" + ObjectName.quote(name));
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				if (server.isRegistered(on)) {
+					server.unregisterMBean(on);
+				}
+				server.registerMBean(this, on);
+				REGISTERED.put(on, this);
+				return on;
+			} catch (JMException e) {
+				throw new IllegalStateException("Profile registration failed: " + name, e);
+			}
+		}
+	}
+
+	/**
+	 * Unregister profile MBean when it is still this profile (name can be
+	 * taken over by other parser).
+	 *
+	 * @param on MBean name
+	 */
+	void unregister(ObjectName on) {
+		synchronized (REGISTERED) {
+			if (REGISTERED.get(on) != this) {
+				return;
+			}
+			REGISTERED.remove(on);
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(on);
+			} catch (JMException e) {
+				// Already unregistered outside of parser
+			}
+		}
+	}
+
+	/**
+	 * Record stage call.
+	 *
+	 * @param stage Stage
+	 * @param start Start (System.nanoTime())
+	 */
+	void record(int stage, long start) {
+		nanos[stage].add(System.nanoTime() - start);
+		counts[stage].increment();
+	}
+
+	/**
+	 * Cumulative nanoseconds of stage.
+	 *
+	 * @param stage Stage
+	 *
+	 * @return Nanoseconds
+	 */
+	public long getNanos(int stage) {
+		return nanos[stage].sum();
+	}
+
+	/**
+	 * Call count of stage.
+	 *
+	 * @param stage Stage
+	 *
+	 * @return Count
+	 */
+	public long getCount(int stage) {
+		return counts[stage].sum();
+	}
+
+	public long getTokenizeNanos() {
+		return getNanos(STAGE_TOKENIZE);
+	}
+
+	public long getTokenizeCount() {
+		return getCount(STAGE_TOKENIZE);
+	}
+
+	public long getHelpScanNanos() {
+		return getNanos(STAGE_HELP_SCAN);
+	}
+
+	public long getHelpScanCount() {
+		return getCount(STAGE_HELP_SCAN);
+	}
+
+	public long getOptionLookupNanos() {
+		return getNanos(STAGE_OPTION_LOOKUP);
+	}
+
+	public long getOptionLookupCount() {
+		return getCount(STAGE_OPTION_LOOKUP);
+	}
+
+	public long getPositionalAssignmentNanos() {
+		return getNanos(STAGE_POSITIONAL_ASSIGNMENT);
+	}
+
+	public long getPositionalAssignmentCount() {
+		return getCount(STAGE_POSITIONAL_ASSIGNMENT);
+	}
+
+	public long getValidationNanos() {
+		return getNanos(STAGE_VALIDATION);
+	}
+
+	public long getValidationCount() {
+		return getCount(STAGE_VALIDATION);
+	}
+
+	public long getExceptionFormattingNanos() {
+		return getNanos(STAGE_EXCEPTION_FORMATTING);
+	}
+
+	public long getExceptionFormattingCount() {
+		return getCount(STAGE_EXCEPTION_FORMATTING);
+	}
+
+	public long getHelpNanos() {
+		return getNanos(STAGE_HELP);
+	}
+
+	public long getHelpCount() {
+		return getCount(STAGE_HELP);
+	}
+
+	/**
+	 * Reset all counters (concurrent calls may be counted partially).
+	 */
+	public void reset() {
+		for (int i = 0; i < STAGES; i++) {
+			nanos[i].reset();
+			counts[i].reset();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package com.strnadj.OptParser;
+
+/**
+ * Management interface of parse profile - cumulative nanoseconds and call counts per stage.
+ *
+ * @author strnadj
+ */
+public interface ParseProfileMBean {
+	/** Joining quotes (tokenizer). */
+	long getTokenizeNanos();
+	long getTokenizeCount();
+
+	/** Pre-scan for -h/--help. */
+	long getHelpScanNanos();
+	long getHelpScanCount();
+
+	/** Option lookup and value binding. */
+	long getOptionLookupNanos();
+	long getOptionLookupCount();
+
+	/** Assigning paths or expressions. */
+	long getPositionalAssignmentNanos();
+	long getPositionalAssignmentCount();
+
+	/** Required options and constraints checks. */
+	long getValidationNanos();
+	long getValidationCount();
+
+	/** Formatting exception messages (help text is counted in help). */
+	long getExceptionFormattingNanos();
+	long getExceptionFormattingCount();
+
+	/** getHelp(). */
+	long getHelpNanos();
+	long getHelpCount();
+
+	/**
+	 * Reset all counters.
+	 */
+	void reset();
+}
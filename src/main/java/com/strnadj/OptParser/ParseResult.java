@@ -0,0 +1,342 @@
+package com.strnadj.OptParser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.strnadj.OptParser.exceptions.InvalidOptionValue;
+
+/**
+ * Result of one parse - stores only options which were given.
+ *
+ * Filled options are bits (by option id), values are stored densely in order
+ * of option ids, so value index is rank of option bit. Defaults and descriptions
+ * are read from shared parser definition, memory of result depends on count of
+ * given arguments, not on size of definition.
+ *
+ * Typed values read by option keys are converted once per result and cached
+ * by option id, result should not be read by keys from more threads at once.
+ *
+ * @author strnadj
+ */
+public class ParseResult {
+	/** Shared parser definition. */
+	private final OptParser parser;
+
+	/** Filled options (bit = option id). */
+	final long[] filled;
+
+	/** Values of filled options in order of ids (String, List or null for flags). */
+	private Object[] values;
+
+	/** Count of filled options. */
+	private int count = 0;
+
+	/** Count of filled options in previous mask words (null for one word). */
+	private final int[] wordRanks;
+
+	/** Values read by keys by option id (created on first typed read). */
+	private Object[] typed;
+
+	/** Cached null value. */
+	private final static Object NULL = new Object();
+
+	/** Parameters after end of options "--" (view of parameters). */
+	private List<String> remaining = Collections.emptyList();
+
+	/**
+	 * Create empty result.
+	 *
+	 * @param parser Parser definition
+	 * @param words Count of mask words
+	 * @param capacity Expected count of filled options
+	 */
+	ParseResult(OptParser parser, int words, int capacity) {
+		this.parser = parser;
+		this.filled = new long[words];
+		this.wordRanks = words > 1 ? new int[words] : null;
+		this.values = new Object[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Index of option value (count of filled options with lower id).
+	 *
+	 * @param id Option id
+	 *
+	 * @return Index
+	 */
+	private int rank(int id) {
+		int word = id >>> 6;
+		int rank = Long.bitCount(filled[word] & ((1L << id) - 1));
+		return word == 0 ? rank : rank + wordRanks[word];
+	}
+
+	/**
+	 * Set option as filled with value (last value wins).
+	 *
+	 * @param id Option id
+	 * @param value Value (String, List of values or null for flags)
+	 */
+	void set(int id, Object value) {
+		int index = rank(id);
+		long bit = 1L << id;
+
+		if ((filled[id >>> 6] & bit) != 0) {
+			values[index] = value;
+			return;
+		}
+
+		if (count == values.length) {
+			values = Arrays.copyOf(values, count * 2);
+		}
+		System.arraycopy(values, index, values, index + 1, count - index);
+		values[index] = value;
+		filled[id >>> 6] |= bit;
+		count++;
+		if (wordRanks != null) {
+			for (int word = (id >>> 6) + 1; word < wordRanks.length; word++) {
+				wordRanks[word]++;
+			}
+		}
+	}
+
+	/**
+	 * Raw value of filled option.
+	 *
+	 * @param id Option id
+	 *
+	 * @return Value (String, List or null)
+	 */
+	Object raw(int id) {
+		return values[rank(id)];
+	}
+
+	/**
+	 * Set parameters after end of options.
+	 *
+	 * @param remaining View of parameters
+	 */
+	void setRemainingArguments(List<String> remaining) {
+		this.remaining = remaining;
+	}
+
+	/**
+	 * Return parameters after end of options "--" - read-only view of parsed
+	 * array (not tokenized, not copied).
+	 *
+	 * @return Parameters, empty without "--"
+	 */
+	public List<String> getRemainingArguments() {
+		return remaining;
+	}
+
+	/**
+	 * Return parser definition.
+	 *
+	 * @return Parser
+	 */
+	public OptParser getParser() {
+		return parser;
+	}
+
+	/**
+	 * Count of filled options.
+	 *
+	 * @return Count
+	 */
+	public int getFilledCount() {
+		return count;
+	}
+
+	/**
+	 * Is option filled?
+	 *
+	 * @param id Option id
+	 *
+	 * @return True if its
+	 */
+	public boolean isFilled(int id) {
+		int word = id >>> 6;
+		return word < filled.length && (filled[word] & (1L << id)) != 0;
+	}
+
+	/**
+	 * Return value or default value of option.
+	 *
+	 * @param id Option id
+	 *
+	 * @return Value
+	 */
+	public String getValue(int id) {
+		if (!isFilled(id)) {
+			return parser.getOptionById(id).getDefaultValue();
+		}
+
+		Object value = raw(id);
+		if (value instanceof List) {
+			List<?> list = (List<?>) value;
+			return list.isEmpty() ? "" : (String) list.get(0);
+		}
+		return value == null ? "" : (String) value;
+	}
+
+	/**
+	 * Return values of variadic path or expression.
+	 *
+	 * @param id Option id
+	 *
+	 * @return Values, empty when not filled
+	 */
+	@SuppressWarnings("unchecked")
+	public List<String> getValues(int id) {
+		if (!isFilled(id)) {
+			return Collections.emptyList();
+		}
+
+		Object value = raw(id);
+		if (value instanceof List) {
+			return (List<String>) value;
+		}
+		return value == null ? Collections.<String>emptyList() : Collections.singletonList((String) value);
+	}
+
+	/**
+	 * Return true when option is filled.
+	 *
+	 * @param optName Option full name
+	 *
+	 * @return True when option is filled
+	 */
+	public boolean isOptionFilled(String optName) {
+		Option o = parser.getOptionByFullName(optName);
+		return o != null && isFilled(o.getId());
+	}
+
+	/**
+	 * Return default value or filled value.
+	 *
+	 * @param parameter Option name
+	 *
+	 * @return Value or null for undefined option
+	 */
+	public String getOptionValue(String parameter) {
+		if (parameter.startsWith("--")) {
+			parameter = parameter.substring(2);
+		}
+
+		Option o = parser.getOptionByFullName(parameter);
+		return o == null ? null : getValue(o.getId());
+	}
+
+	/**
+	 * Return converted value or converted default value (memoized converter of option).
+	 *
+	 * @param optName Option full name
+	 *
+	 * @throws InvalidOptionValue Undefined option, no converter or conversion failed
+	 *
+	 * @return Converted value
+	 */
+	public <T> T getConvertedValue(String optName) throws InvalidOptionValue {
+		Option o = parser.getOptionByFullName(optName);
+		if (o == null) {
+			throw new InvalidOptionValue(String.format("Command: %s - undefined option %s!", parser.getCommandName(), optName));
+		}
+		return o.convert(getValue(o.getId()));
+	}
+
+	/**
+	 * Return values of variadic path or expression.
+	 *
+	 * @param optName Option full name
+	 *
+	 * @return Values, empty when not filled or undefined
+	 */
+	public List<String> getOptionValues(String optName) {
+		Option o = parser.getOptionByFullName(optName);
+		return o == null ? Collections.<String>emptyList() : getValues(o.getId());
+	}
+
+	/**
+	 * Return option id of key.
+	 *
+	 * @param key Option key
+	 *
+	 * @throws IllegalArgumentException Key of other parser
+	 *
+	 * @return Option id
+	 */
+	private int id(OptionKey<?> key) {
+		if (!parser.hasOption(key.option)) {
+			throw new IllegalArgumentException(String.format("Command: %s - foreign option key %s!", parser.getCommandName(), key));
+		}
+		return key.id;
+	}
+
+	/**
+	 * Is option filled?
+	 *
+	 * @param key Option key
+	 *
+	 * @return True if its
+	 */
+	public boolean isFilled(OptionKey<?> key) {
+		return isFilled(id(key));
+	}
+
+	/**
+	 * Return raw value or default value of option.
+	 *
+	 * @param key Option key
+	 *
+	 * @return Value
+	 */
+	public String getValue(OptionKey<?> key) {
+		return getValue(id(key));
+	}
+
+	/**
+	 * Return typed value - converted when key was created with converter.
+	 *
+	 * @param key Option key
+	 *
+	 * @throws InvalidOptionValue Conversion failed
+	 *
+	 * @return Value or default value
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(OptionKey<T> key) throws InvalidOptionValue {
+		int id = id(key);
+		if (!key.converted) {
+			return (T) getValue(id);
+		}
+
+		// Converted value is cached (raw key of same option reads raw value)
+		Object[] typed = this.typed;
+		if (typed != null && id < typed.length) {
+			Object ret = typed[id];
+			if (ret != null) {
+				return ret == NULL ? null : (T) ret;
+			}
+		}
+
+		T ret = key.option.<T>convert(getValue(id));
+		if (typed == null || id >= typed.length) {
+			// Options can be added to parser after parse
+			typed = this.typed = typed == null ? new Object[Math.max(id + 1, parser.getOptionCount())] : Arrays.copyOf(typed, id + 1);
+		}
+		typed[id] = ret == null ? NULL : ret;
+		return ret;
+	}
+
+	/**
+	 * Return values of variadic path or expression.
+	 *
+	 * @param key Option key
+	 *
+	 * @return Values, empty when not filled
+	 */
+	public List<String> getValues(OptionKey<?> key) {
+		return getValues(id(key));
+	}
+}
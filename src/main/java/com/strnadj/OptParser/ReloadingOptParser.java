@@ -0,0 +1,201 @@
+package com.strnadj.OptParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Hot-reloadable parser - specification is loaded from definition file and rebuilt when file changes.
+ *
+ * Directory of file is watched by WatchService in background thread, new
+ * parser is built there and published by atomic swap. get() and parse() never
+ * lock, parses which already got old parser finish on it. Invalid definition
+ * keeps old parser (error is available by getLastError()), unchanged
+ * specification (same fingerprint) is not swapped.
+ *
+ * @author strnadj
+ */
+public class ReloadingOptParser implements Closeable {
+	/** Definition file. */
+	private final Path file;
+
+	/** Applied on every built parser (converters, profiling) or null. */
+	private final Consumer<OptParser> customizer;
+
+	/** Current parser and its specification. */
+	private final AtomicReference<OptParser> current = new AtomicReference<OptParser>();
+	private volatile OptParserSpec currentSpec;
+
+	/** Last reload error or null. */
+	private volatile Exception lastError;
+
+	/** Count of swaps. */
+	private volatile long reloads = 0;
+
+	/** Watch service. */
+	private final WatchService watcher;
+
+	/** Watch thread. */
+	private final Thread thread;
+
+	/**
+	 * Load definition file and start watching it.
+	 *
+	 * @param file Definition file
+	 *
+	 * @throws IOException Read or watch failure
+	 */
+	public ReloadingOptParser(Path file) throws IOException {
+		this(file, null);
+	}
+
+	/**
+	 * Load definition file and start watching it.
+	 *
+	 * @param file Definition file
+	 * @param customizer Applied on every built parser or null
+	 *
+	 * @throws IOException Read or watch failure
+	 * @throws IllegalArgumentException Invalid definition
+	 */
+	public ReloadingOptParser(Path file, Consumer<OptParser> customizer) throws IOException {
+		this.file = file.toAbsolutePath();
+		this.customizer = customizer;
+
+		// First load must succeed
+		OptParserSpec spec = OptParserSpec.load(this.file);
+		current.set(build(spec));
+		currentSpec = spec;
+
+		this.watcher = FileSystems.getDefault().newWatchService();
+		this.file.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+		this.thread = new Thread(this::watch, "optparser-reload");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Build parser from specification.
+	 *
+	 * @param spec Specification
+	 *
+	 * @return Parser
+	 */
+	private OptParser build(OptParserSpec spec) {
+		OptParser parser = spec.build();
+		if (customizer != null) {
+			customizer.accept(parser);
+		}
+		return parser;
+	}
+
+	/**
+	 * Return current parser (shared, use parse() of it).
+	 *
+	 * @return Parser
+	 */
+	public OptParser get() {
+		return current.get();
+	}
+
+	/**
+	 * Parse arguments by current parser.
+	 *
+	 * @param parameters Parameters
+	 *
+	 * @throws Exception Parsing exception
+	 *
+	 * @return Parse result (its parser is the spec used)
+	 */
+	public ParseResult parse(String [] parameters) throws Exception {
+		return current.get().parse(parameters);
+	}
+
+	/**
+	 * Reload definition file now.
+	 *
+	 * @return True when parser was swapped
+	 */
+	public synchronized boolean reload() {
+		try {
+			OptParserSpec spec = OptParserSpec.load(file);
+			lastError = null;
+			if (spec.equals(currentSpec)) {
+				return false;
+			}
+
+			current.set(build(spec));
+			currentSpec = spec;
+			reloads++;
+			return true;
+		} catch (IOException | RuntimeException e) {
+			// Keep old parser
+			lastError = e;
+			return false;
+		}
+	}
+
+	/**
+	 * Watch definition file until closed.
+	 */
+	private void watch() {
+		Path name = file.getFileName();
+		while (true) {
+			WatchKey key;
+			try {
+				key = watcher.take();
+			} catch (InterruptedException | ClosedWatchServiceException e) {
+				return;
+			}
+
+			boolean changed = false;
+			for (WatchEvent<?> event : key.pollEvents()) {
+				if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+					changed = true;
+				}
+			}
+			if (changed) {
+				reload();
+			}
+
+			if (!key.reset()) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Return last reload error.
+	 *
+	 * @return Exception or null when last reload succeeded
+	 */
+	public Exception getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Count of swapped parsers.
+	 *
+	 * @return Reloads
+	 */
+	public long getReloadCount() {
+		return reloads;
+	}
+
+	/**
+	 * Stop watching (current parser stays usable).
+	 */
+	@Override
+	public void close() throws IOException {
+		watcher.close();
+	}
+}
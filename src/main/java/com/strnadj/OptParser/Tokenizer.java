@@ -0,0 +1,232 @@
+package com.strnadj.OptParser;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.strnadj.OptParser.exceptions.OverlapingBracketsException;
+
+/**
+ * Incremental tokenizer - joins parameters by quotes (single, double) and escapes.
+ * 
+ * Parameters are read as they were one string joined by spaces, but nothing is
+ * joined or copied up front - tokens are created on demand by nextToken().
+ * 
+ * @author strnadj
+ */
+public final class Tokenizer {
+	/** Source parameters. */
+	private final String [] params;
+	
+	/** Actual parameter index. */
+	private int param = 0;
+	
+	/** Actual char index in parameter. */
+	private int pos = 0;
+	
+	/** Token buffer. */
+	private final StringBuilder token = new StringBuilder();
+	
+	/** Marks. */
+	private boolean singleQuotedOpen = false;
+	private boolean doubleQuotedOpen = false;
+	
+	/** Count of \ before actual char. */
+	private int escapedCount = 0;
+	
+	/** Delimiter scanner (scalar or vector). */
+	private final DelimiterScanner scanner = DelimiterScanner.create();
+	
+	/**
+	 * Create tokenizer over parameters.
+	 * 
+	 * @param params Parameters
+	 */
+	public Tokenizer(String [] params) {
+		this.params = params;
+	}
+	
+	/**
+	 * Return index of end of options parameter - "--" which is not inside
+	 * quotes and its boundary space is not escaped. Scanning stops at the
+	 * first one, parameters after it are never read (used by generated
+	 * parsers too).
+	 * 
+	 * @param params Parameters
+	 * 
+	 * @return Index or -1 when there is none
+	 */
+	public static int endOfOptions(String [] params) {
+		boolean single = false;
+		boolean quoted = false;
+		int escaped = 0;
+		for (int i = 0; i < params.length; i++) {
+			if (!single && !quoted && escaped % 2 == 0 && params[i].equals("--")) {
+				return i;
+			}
+			
+			// Boundary space ends escape sequence
+			escaped = 0;
+			String p = params[i];
+			for (int j = 0; j < p.length(); j++) {
+				char c = p.charAt(j);
+				if (c == '\\') {
+					escaped++;
+					continue;
+				}
+				if (escaped % 2 == 0) {
+					if (c == '\'' && !quoted) {
+						single = !single;
+					} else if (c == '"' && !single) {
+						quoted = !quoted;
+					}
+				}
+				escaped = 0;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Skip end of options parameter when it is next token (same rule as
+	 * endOfOptions), tokenizer is at the end then.
+	 * 
+	 * @return Read-only view of parameters after "--" or null
+	 */
+	List<String> skipEndOfOptions() {
+		if (singleQuotedOpen || doubleQuotedOpen || escapedCount % 2 != 0 || token.length() > 0) {
+			return null;
+		}
+		
+		// Next parameter starts after boundary of read one
+		int next = param;
+		int at = pos;
+		while (next < params.length && at == params[next].length()) {
+			next++;
+			at = 0;
+		}
+		if (next == params.length || at != 0 || !params[next].equals("--")) {
+			return null;
+		}
+		
+		param = params.length;
+		pos = 0;
+		return Collections.unmodifiableList(Arrays.asList(params).subList(next + 1, params.length));
+	}
+	
+	/**
+	 * Read next char (parameters are separated by space).
+	 * 
+	 * @return Char or -1 on the end
+	 */
+	private int readChar() {
+		while (param < params.length) {
+			String p = params[param];
+			if (pos < p.length()) {
+				return p.charAt(pos++);
+			}
+			
+			// Move to next parameter, boundary is a space
+			param++;
+			pos = 0;
+			if (param < params.length) {
+				return ' ';
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Append chars of actual parameter up to next delimiter at once.
+	 */
+	private void appendRun() {
+		if (param < params.length) {
+			String p = params[param];
+			int end = scanner.indexOf(p, pos, p.length());
+			token.append(p, pos, end);
+			pos = end;
+		}
+	}
+	
+	/**
+	 * Flush token buffer.
+	 * 
+	 * @return Token
+	 */
+	private String flush() {
+		String ret = token.toString();
+		token.setLength(0);
+		escapedCount = 0;
+		return ret;
+	}
+	
+	/**
+	 * Return next token.
+	 * 
+	 * @throws OverlapingBracketsException Parenthesses overleaps
+	 * 
+	 * @return Token or null when there are no more tokens
+	 */
+	public String nextToken() throws OverlapingBracketsException {
+		int ch;
+		while ((ch = readChar()) != -1) {
+			char c = (char) ch;
+			if (c == ' ' && escapedCount % 2 == 0 && !singleQuotedOpen && !doubleQuotedOpen && token.length() > 0) {
+				return flush();
+			} else if(c == '\\') {
+				escapedCount++;
+				token.append('\\');
+			} else if(c == '\'' && escapedCount % 2 == 0) {
+				if (singleQuotedOpen) {
+					singleQuotedOpen = false;
+					token.append('\'');
+					return flush();
+				} else if(doubleQuotedOpen) {
+					throw new OverlapingBracketsException("Quoted \" overleaping with '!");
+				} else {
+					singleQuotedOpen = true;
+					String ret = token.length() > 0 ? flush() : null;
+					escapedCount = 0;
+					token.append('\'');
+					if (ret != null) {
+						return ret;
+					}
+				}
+			} else if(c == '"' && escapedCount % 2 == 0) {
+				if (doubleQuotedOpen) {
+					doubleQuotedOpen = false;
+					token.append('"');
+					return flush();
+				} else if(singleQuotedOpen) {
+					throw new OverlapingBracketsException("Quote ' overleaping with \"!");
+				} else {
+					doubleQuotedOpen = true;
+					String ret = token.length() > 0 ? flush() : null;
+					escapedCount = 0;
+					token.append('"');
+					if (ret != null) {
+						return ret;
+					}
+				}
+			} else {
+				token.append(c);
+				escapedCount = 0;
+				appendRun();
+			}
+		}
+		
+		if (singleQuotedOpen) {
+			throw new OverlapingBracketsException("Single quoted bracket not closed!");
+		}
+		
+		if (doubleQuotedOpen) {
+			throw new OverlapingBracketsException("Double quoted bracket not closed!");
+		}
+		
+		if (token.length() > 0) {
+			return flush();
+		}
+		
+		return null;
+	}
+}
@@ -0,0 +1,21 @@
+package com.strnadj.OptParser;
+
+/**
+ * Converter of raw option value (ex. Duration::parse, Pattern::compile, Paths::get).
+ *
+ * @author strnadj
+ *
+ * @param <T> Converted type
+ */
+public interface ValueConverter<T> {
+	/**
+	 * Convert raw value.
+	 *
+	 * @param value Raw value
+	 *
+	 * @return Converted value
+	 *
+	 * @throws Exception Invalid value
+	 */
+	T convert(String value) throws Exception;
+}
@@ -0,0 +1,16 @@
+package com.strnadj.OptParser.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event - resolving options from tokens.
+ * 
+ * @author strnadj
+ */
+@Name("com.strnadj.OptParser.OptionResolve")
+@Label("Option Resolve")
+@Description("Resolving options from tokens")
+public class OptionResolveEvent extends ParseStageEvent {
+}
@@ -0,0 +1,23 @@
+package com.strnadj.OptParser.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event - parsing failed (duration from start of parsing).
+ * 
+ * @author strnadj
+ */
+@Name("com.strnadj.OptParser.ParseFailure")
+@Label("Parse Failure")
+@Description("Parsing arguments failed with exception")
+public class ParseFailureEvent extends ParseStageEvent {
+	/** Exception class name. */
+	@Label("Exception Class")
+	public String exceptionClass;
+	
+	/** Exception message. */
+	@Label("Message")
+	public String message;
+}
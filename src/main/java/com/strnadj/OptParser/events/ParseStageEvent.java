@@ -0,0 +1,39 @@
+package com.strnadj.OptParser.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Base JFR event for parse stages - disabled events cost nothing.
+ * 
+ * @author strnadj
+ */
+@Category("OptParser")
+@StackTrace(false)
+public abstract class ParseStageEvent extends jdk.jfr.Event {
+	/** Command name. */
+	@Label("Command")
+	public String commandName;
+	
+	/** Count of tokens (values for positional assignment). */
+	@Label("Token Count")
+	public int tokenCount;
+	
+	/** Count of options defined by parser. */
+	@Label("Option Count")
+	public int optionCount;
+	
+	/**
+	 * Set event fields.
+	 * 
+	 * @param commandName Command name
+	 * @param tokenCount Count of tokens
+	 * @param optionCount Count of options
+	 */
+	public void set(String commandName, int tokenCount, int optionCount) {
+		this.commandName = commandName;
+		this.tokenCount = tokenCount;
+		this.optionCount = optionCount;
+	}
+}
@@ -0,0 +1,16 @@
+package com.strnadj.OptParser.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event - assigning paths or expressions.
+ * 
+ * @author strnadj
+ */
+@Name("com.strnadj.OptParser.PositionalAssignment")
+@Label("Positional Assignment")
+@Description("Assigning paths or expressions")
+public class PositionalAssignmentEvent extends ParseStageEvent {
+}
@@ -0,0 +1,16 @@
+package com.strnadj.OptParser.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event - joining parameters by quotes and escapes.
+ * 
+ * @author strnadj
+ */
+@Name("com.strnadj.OptParser.Tokenize")
+@Label("Tokenize")
+@Description("Joining parameters by quotes and escapes")
+public class TokenizeEvent extends ParseStageEvent {
+}
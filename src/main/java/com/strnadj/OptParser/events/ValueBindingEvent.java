@@ -0,0 +1,16 @@
+package com.strnadj.OptParser.events;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event - binding value to option.
+ * 
+ * @author strnadj
+ */
+@Name("com.strnadj.OptParser.ValueBinding")
+@Label("Value Binding")
+@Description("Binding value to option")
+public class ValueBindingEvent extends ParseStageEvent {
+}
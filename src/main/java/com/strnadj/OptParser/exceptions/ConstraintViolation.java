@@ -0,0 +1,11 @@
+package com.strnadj.OptParser.exceptions;
+
+/**
+ * @author strnadj
+ */
+
+public class ConstraintViolation extends Exception {
+	public ConstraintViolation(String msg) {
+		super(msg);
+	}
+}
@@ -0,0 +1,15 @@
+package com.strnadj.OptParser.exceptions;
+
+/**
+ * @author strnadj
+ */
+
+public class InvalidOptionValue extends Exception {
+	public InvalidOptionValue(String msg) {
+		super(msg);
+	}
+	
+	public InvalidOptionValue(String msg, Throwable cause) {
+		super(msg, cause);
+	}
+}
@@ -0,0 +1,70 @@
+package com.strnadj.OptParser;
+
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Delimiter scanner on Vector API - chars are copied to buffer in growing
+ * chunks and compared with all delimiters at once, lane by lane.
+ *
+ * Compiled by separate execution (src/main/vector), loaded only when module
+ * jdk.incubator.vector is present.
+ *
+ * @author strnadj
+ */
+final class VectorDelimiterScanner extends DelimiterScanner {
+	/** Preferred species (16 chars on AVX2, 32 on AVX-512, 8 on NEON). */
+	private final static VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+	/** First and maximal chunk length. */
+	private final static int MIN_CHUNK = 64;
+	private final static int MAX_CHUNK = 4096;
+
+	/** Chunk buffer (created on first long range). */
+	private char[] buffer;
+
+	@Override
+	DelimiterScanner newScanner() {
+		return new VectorDelimiterScanner();
+	}
+
+	@Override
+	int wideIndexOf(String s, int from, int to) {
+		if (buffer == null) {
+			buffer = new char[MAX_CHUNK];
+		}
+
+		// Delimiters are often close, chunk grows with scanned length
+		int chunk = MIN_CHUNK;
+		int i = from;
+		while (i < to) {
+			int n = Math.min(chunk, to - i);
+			s.getChars(i, i + n, buffer, 0);
+
+			int j = 0;
+			int upper = SPECIES.loopBound(n);
+			for (; j < upper; j += SPECIES.length()) {
+				ShortVector v = ShortVector.fromCharArray(SPECIES, buffer, j);
+				VectorMask<Short> m = v.eq((short) ' ')
+						.or(v.eq((short) '\''))
+						.or(v.eq((short) '"'))
+						.or(v.eq((short) '\\'));
+				if (m.anyTrue()) {
+					return i + j + m.firstTrue();
+				}
+			}
+
+			// Tail of chunk
+			for (; j < n; j++) {
+				if (isDelimiter(buffer[j])) {
+					return i + j;
+				}
+			}
+
+			i += n;
+			chunk = Math.min(MAX_CHUNK, chunk * 2);
+		}
+		return to;
+	}
+}
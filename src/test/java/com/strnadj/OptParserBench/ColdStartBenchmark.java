@@ -0,0 +1,166 @@
+package com.strnadj.OptParserBench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Cold start benchmark - measures first parse and help in fresh JVMs.
+ *
+ * Every measurement forks new JVM (ColdStartProbe) and reports medians across
+ * forks for spec sizes - time from main to finished parse and to finished help.
+ * One more fork per size logs class loading (-Xlog:class+load), it is not
+ * timed and reports classes loaded by parse and help by package (cost of
+ * String.format, collections, exception classes).
+ *
+ * Run: java -cp target/classes:target/test-classes com.strnadj.OptParserBench.ColdStartBenchmark [forks] [sizes...]
+ * JVM options for forks can be passed by -Dbench.jvmArgs="-Xshare:off ..."
+ */
+public class ColdStartBenchmark
+{
+	/** Columns of probe output. */
+	private final static int UPTIME = 1, PARSE = 2, HELP = 3, TOTAL = 4;
+
+	/** Class loading log of fork (class name and source per line). */
+	private final static String CLASS_LOG = "-Xlog:class+load=info:stdout:none";
+
+	public static void main(String [] args) throws Exception {
+		int forks = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int [] sizes = {4, 16, 64};
+		if (args.length > 1) {
+			sizes = new int[args.length - 1];
+			for (int i = 1; i < args.length; i++) {
+				sizes[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+
+		List<List<String>> loaded = new ArrayList<List<String>>();
+		System.out.println(String.format("%-6s %12s %12s %12s %12s %8s", "size", "uptime ms", "parse us", "help us", "total us", "classes"));
+		for (int size : sizes) {
+			long [][] results = new long[forks][];
+			for (int f = 0; f < forks; f++) {
+				results[f] = parseResult(fork(size, false));
+			}
+			List<String> classes = loadedClasses(fork(size, true));
+			loaded.add(classes);
+
+			System.out.println(String.format("%-6d %12d %12d %12d %12d %8d", size,
+					median(results, UPTIME), median(results, PARSE) / 1000, median(results, HELP) / 1000,
+					median(results, TOTAL) / 1000, classes.size()));
+		}
+
+		for (int i = 0; i < sizes.length; i++) {
+			System.out.println();
+			System.out.println(String.format("Classes loaded by parse and help (size %d):", sizes[i]));
+			printBreakdown(loaded.get(i));
+		}
+	}
+
+	/**
+	 * Run probe in fresh JVM.
+	 *
+	 * @return Lines of output
+	 */
+	private static List<String> fork(int size, boolean classLog) throws Exception {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		String jvmArgs = System.getProperty("bench.jvmArgs", "").trim();
+
+		List<String> command = new ArrayList<String>();
+		command.add(java);
+		if (jvmArgs.length() > 0) {
+			command.addAll(Arrays.asList(jvmArgs.split(" +")));
+		}
+		if (classLog) {
+			command.add(CLASS_LOG);
+		}
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(ColdStartProbe.class.getName());
+		command.add(String.valueOf(size));
+
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+
+		if (process.waitFor() != 0 || lines.isEmpty()) {
+			throw new IllegalStateException("Probe failed: " + lines);
+		}
+		return lines;
+	}
+
+	/**
+	 * Parse result line (last line of output).
+	 */
+	private static long [] parseResult(List<String> lines) {
+		String [] columns = lines.get(lines.size() - 1).trim().split(" ");
+		long [] ret = new long[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			ret[i] = Long.parseLong(columns[i]);
+		}
+		return ret;
+	}
+
+	/**
+	 * Classes logged between markers of measured part.
+	 */
+	private static List<String> loadedClasses(List<String> lines) {
+		List<String> ret = new ArrayList<String>();
+		boolean measured = false;
+		for (String line : lines) {
+			if (line.equals(ColdStartProbe.BEGIN)) {
+				measured = true;
+			} else if (line.equals(ColdStartProbe.END)) {
+				return ret;
+			} else if (measured) {
+				int source = line.indexOf(" source: ");
+				if (source > 0) {
+					ret.add(line.substring(0, source));
+				}
+			}
+		}
+		throw new IllegalStateException("Missing markers in class loading log");
+	}
+
+	/**
+	 * Print count and names of loaded classes by package.
+	 */
+	private static void printBreakdown(List<String> classes) {
+		Map<String, List<String>> packages = new TreeMap<String, List<String>>();
+		for (String name : classes) {
+			int dot = name.lastIndexOf('.');
+			String pkg = dot < 0 ? "" : name.substring(0, dot);
+			List<String> names = packages.get(pkg);
+			if (names == null) {
+				names = new ArrayList<String>();
+				packages.put(pkg, names);
+			}
+			names.add(name.substring(dot + 1));
+		}
+
+		for (Map.Entry<String, List<String>> e : packages.entrySet()) {
+			System.out.println(String.format("%4d %s: %s", e.getValue().size(), e.getKey(), String.join(", ", e.getValue())));
+		}
+	}
+
+	/**
+	 * Median of column.
+	 */
+	private static long median(long [][] results, int column) {
+		long [] values = new long[results.length];
+		for (int i = 0; i < results.length; i++) {
+			values[i] = results[i][column];
+		}
+		Arrays.sort(values);
+		return values[values.length / 2];
+	}
+}
@@ -0,0 +1,74 @@
+package com.strnadj.OptParserBench;
+
+import java.lang.management.ManagementFactory;
+
+import com.strnadj.OptParser.OptParser;
+
+/**
+ * Child process of cold start benchmark - first parse and help in fresh JVM.
+ * 
+ * Prints one line: spec size, JVM uptime at main (ms), nanos from main to
+ * finished parse, of help and from main to finished help, length of help.
+ * Measured part is printed between markers, so classes loaded by it can be
+ * read from class loading log (-Xlog:class+load=info:stdout:none). Measured
+ * part does not use string concatenation (invokedynamic bootstrap).
+ */
+public class ColdStartProbe
+{
+	/** Markers of measured part. */
+	final static String BEGIN = "-- cold start begin --";
+	final static String END = "-- cold start end --";
+	
+	/**
+	 * Create specification with count of options.
+	 */
+	static OptParser createParser(int size) {
+		OptParser parser = OptParser.createOptionParser("bench", "Cold start benchmark");
+		for (int i = 0; i < size; i++) {
+			if (i % 2 == 0) {
+				parser.addOption((char) ('A' + (i % 58)), "option".concat(String.valueOf(i)), OptParser.OPTIONAL, "", "Option number ".concat(String.valueOf(i)));
+			} else {
+				parser.addOptionRequiredValue((char) ('A' + (i % 58)), "option".concat(String.valueOf(i)), OptParser.OPTIONAL, "x", "Option with value ".concat(String.valueOf(i)));
+			}
+		}
+		return parser.addPathOrExpression("path", OptParser.REQUIRED, "", "Path");
+	}
+	
+	/**
+	 * Arguments for specification with count of options.
+	 */
+	static String [] createArguments(int size) {
+		String [] args = new String[size + 1];
+		int count = 0;
+		for (int i = 0; i < size && count < size - 1; i++) {
+			args[count++] = "--option".concat(String.valueOf(i));
+			if (i % 2 == 1) {
+				args[count++] = "value".concat(String.valueOf(i));
+			}
+		}
+		args[count++] = "/tmp/path";
+		return java.util.Arrays.copyOf(args, count);
+	}
+	
+	public static void main(String [] args) throws Exception {
+		// Classes of first print are loaded before marker is written
+		System.out.println(BEGIN);
+		long start = System.nanoTime();
+		long startMillis = System.currentTimeMillis();
+		int size = Integer.parseInt(args[0]);
+		
+		OptParser parser = createParser(size);
+		parser.parseArguments(createArguments(size));
+		long parsed = System.nanoTime();
+		
+		String help = parser.getHelp();
+		long helped = System.nanoTime();
+		System.out.println(END);
+		
+		// Management beans are loaded after measured part
+		long uptime = startMillis - ManagementFactory.getRuntimeMXBean().getStartTime();
+		
+		System.out.println(String.format("%d %d %d %d %d %d", size, uptime, parsed - start, helped - parsed,
+				helped - start, help.length()));
+	}
+}
@@ -0,0 +1,98 @@
+package com.strnadj.OptParserBench;
+
+import java.util.Random;
+
+import com.strnadj.OptParser.ParallelTokenizer;
+import com.strnadj.OptParser.Tokenizer;
+
+/**
+ * Tokenizer throughput benchmark - large argfile-like input (long paths,
+ * quoted values, escaped spaces).
+ *
+ * Compare delimiter scanners by running it twice (built by mvn test-compile):
+ * java --add-modules jdk.incubator.vector -cp target/classes:target/test-classes com.strnadj.OptParserBench.TokenizerBenchmark [params] [rounds] [name length]
+ * java --add-modules jdk.incubator.vector -Doptparser.vector=false -cp ... (scalar scanner)
+ */
+public class TokenizerBenchmark
+{
+	public static void main(String [] args) throws Exception {
+		int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int length = args.length > 2 ? Integer.parseInt(args[2]) : 40;
+
+		String [] params = createInput(count, length);
+		long chars = 0;
+		for (String p : params) {
+			chars += p.length() + 1;
+		}
+
+		boolean vector = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+				&& TokenizerBenchmark.class.getClassLoader().getResource("com/strnadj/OptParser/VectorDelimiterScanner.class") != null
+				&& Boolean.parseBoolean(System.getProperty("optparser.vector", "true"));
+		System.out.println(String.format("scanner: %s, input: %d params, %d chars", vector ? "vector" : "scalar", count, chars));
+		System.out.println(String.format("%-12s %12s %12s", "tokenizer", "median ms", "MB/s"));
+
+		long sink = 0;
+		long [] sequential = new long[rounds];
+		long [] parallel = new long[rounds];
+
+		// Warm-up round is not measured
+		for (int r = -1; r < rounds; r++) {
+			long start = System.nanoTime();
+			Tokenizer tokenizer = new Tokenizer(params);
+			String token;
+			while ((token = tokenizer.nextToken()) != null) {
+				sink += token.length();
+			}
+			long mid = System.nanoTime();
+			sink += ParallelTokenizer.tokenize(params, 1 << 16).size();
+			long end = System.nanoTime();
+
+			if (r >= 0) {
+				sequential[r] = mid - start;
+				parallel[r] = end - mid;
+			}
+		}
+
+		print("sequential", sequential, chars);
+		print("parallel", parallel, chars);
+		if (sink == 42) {
+			System.out.println();
+		}
+	}
+
+	/**
+	 * Generate parameters.
+	 */
+	private static String [] createInput(int count, int length) {
+		Random random = new Random(42);
+		String [] ret = new String[count];
+		for (int i = 0; i < count; i++) {
+			StringBuilder sb = new StringBuilder("/srv/data/projects/build-output/modules/component-");
+			sb.append(random.nextInt(100000)).append("/resources/generated/");
+			for (int j = random.nextInt(length); j > 0; j--) {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+			switch (random.nextInt(8)) {
+			case 0:
+				ret[i] = "'" + sb + " copy'";
+				break;
+			case 1:
+				ret[i] = sb.append("\\ copy").toString();
+				break;
+			default:
+				ret[i] = sb.toString();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Print median.
+	 */
+	private static void print(String name, long [] times, long chars) {
+		java.util.Arrays.sort(times);
+		long median = times[times.length / 2];
+		System.out.println(String.format("%-12s %12.2f %12.1f", name, median / 1e6, chars * 2 / 1e6 / (median / 1e9)));
+	}
+}
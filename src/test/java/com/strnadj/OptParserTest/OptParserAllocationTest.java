@@ -0,0 +1,204 @@
+package com.strnadj.OptParserTest;
+
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strnadj.OptParser.OptParser;
+import com.strnadj.OptParser.OptionKey;
+import com.strnadj.OptParser.OptionSet;
+import com.strnadj.OptParser.ParseResult;
+
+/**
+ * Allocation budget tests for parse hot path.
+ * 
+ * Measures bytes allocated by current thread per call and fails when
+ * configured budget is exceeded. Budgets can be overridden with system
+ * properties (optparser.budget.parse, optparser.budget.value, optparser.budget.help).
+ */
+public class OptParserAllocationTest
+{
+	/** Warm-up iterations (let JIT settle). */
+	private final static int WARMUP = 20000;
+	
+	/** Measured iterations. */
+	private final static int ITERATIONS = 20000;
+	
+	/** Budget for one parseArguments call (bytes). */
+	private final static long PARSE_BUDGET = Long.getLong("optparser.budget.parse", 4096);
+	
+	/** Budget for one getOptionValue call (bytes). */
+	private final static long VALUE_BUDGET = Long.getLong("optparser.budget.value", 64);
+	
+	/** Budget for one getHelp call (bytes). */
+	private final static long HELP_BUDGET = Long.getLong("optparser.budget.help", 4096);
+	
+	/** Thread MX bean with allocation counters. */
+	private com.sun.management.ThreadMXBean threadBean;
+	
+	/** Sink - keep results alive for JIT. */
+	private int sink;
+	
+	@Before
+	public void setUp() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		
+		threadBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+		threadBean.setThreadAllocatedMemoryEnabled(true);
+	}
+	
+	/**
+	 * Representative specification (options with values, required poe).
+	 */
+	private OptParser createParser() {
+		return OptParser.createOptionParser("cp", "Copy files")
+				.addOption('h', "help", OptParser.OPTIONAL, "", "Show this help")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose output")
+				.addOption('R', "recursive", OptParser.OPTIONAL, "", "Copy directories recursively")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, ".", "Target directory")
+				.addOptionRequiredValue('m', "mode", OptParser.REQUIRED, "", "File mode")
+				.addPathOrExpression("source", OptParser.REQUIRED, "", "Source path")
+				.addPathOrExpression("destination", OptParser.OPTIONAL, ".", "Destination path");
+	}
+	
+	/**
+	 * Allocated bytes by current thread.
+	 */
+	private long allocated() {
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * Assert per call allocation.
+	 */
+	private void assertBudget(String what, long before, long after, long budget) {
+		long perCall = (after - before) / ITERATIONS;
+		assertTrue(String.format("%s allocates %d bytes per call (budget %d)", what, perCall, budget), perCall <= budget);
+	}
+	
+	/**
+	 * Parse arguments allocation.
+	 */
+	@Test
+	public void testParseArgumentsBudget() throws Exception {
+		OptParser parser = createParser();
+		String [] args = new String[] {"-v", "--recursive", "-t", "/tmp/target", "--mode", "0644", "\"some file.txt\"", "dest"};
+		
+		for (int i = 0; i < WARMUP; i++) {
+			parser.parseArguments(args);
+		}
+		
+		long before = allocated();
+		for (int i = 0; i < ITERATIONS; i++) {
+			parser.parseArguments(args);
+		}
+		assertBudget("parseArguments", before, allocated(), PARSE_BUDGET);
+	}
+	
+	/**
+	 * Get option value allocation.
+	 */
+	@Test
+	public void testGetOptionValueBudget() throws Exception {
+		OptParser parser = createParser();
+		parser.parseArguments(new String[] {"--mode", "0644", "source"});
+		
+		for (int i = 0; i < WARMUP; i++) {
+			sink += parser.getOptionValue("target").length();
+		}
+		
+		long before = allocated();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += parser.getOptionValue("target").length();
+		}
+		assertBudget("getOptionValue", before, allocated(), VALUE_BUDGET);
+	}
+	
+	/**
+	 * Read by option key allocation (no name lookup).
+	 */
+	@Test
+	public void testOptionKeyBudget() throws Exception {
+		OptParser parser = createParser();
+		OptionKey<String> target = parser.getOptionKey("target");
+		OptionKey<String> verbose = parser.getOptionKey("verbose");
+		ParseResult result = parser.parse(new String[] {"-v", "--mode", "0644", "source"});
+		
+		for (int i = 0; i < WARMUP; i++) {
+			sink += result.getValue(target).length() + (result.isFilled(verbose) ? 1 : 0);
+		}
+		
+		long before = allocated();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += result.getValue(target).length() + (result.isFilled(verbose) ? 1 : 0);
+		}
+		assertBudget("getValue by key", before, allocated(), 0);
+		
+		// Converted value is read from result
+		OptionKey<Integer> nice = parser.addOptionKey('n', "nice", OptParser.OPTIONAL, "10", "Nice", Integer::valueOf);
+		for (int i = 0; i < WARMUP; i++) {
+			sink += result.get(nice);
+		}
+		before = allocated();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += result.get(nice);
+		}
+		assertBudget("get converted by key", before, allocated(), 0);
+	}
+	
+	/**
+	 * Help allocation.
+	 */
+	@Test
+	public void testGetHelpBudget() throws Exception {
+		OptParser parser = createParser();
+		
+		for (int i = 0; i < WARMUP; i++) {
+			sink += parser.getHelp().length();
+		}
+		
+		long before = allocated();
+		for (int i = 0; i < ITERATIONS; i++) {
+			sink += parser.getHelp().length();
+		}
+		assertBudget("getHelp", before, allocated(), HELP_BUDGET);
+	}
+	
+	/**
+	 * Parsers sharing option set retain much less than parsers with own definitions.
+	 */
+	@Test
+	public void testSharedOptionSetFootprint() throws Exception {
+		OptionSet common = OptionSet.create();
+		for (int i = 0; i < 20; i++) {
+			common.addOption((char) ('a' + i), "option" + i, OptParser.OPTIONAL, "", "Common option " + i);
+		}
+		
+		OptParser [] parsers = new OptParser[1000];
+		long before = allocated();
+		for (int n = 0; n < parsers.length; n++) {
+			parsers[n] = OptParser.createOptionParser("cmd" + n, "Command", common)
+					.addPathOrExpression("source", OptParser.REQUIRED, "", "Source path");
+		}
+		long shared = allocated() - before;
+		
+		before = allocated();
+		for (int n = 0; n < parsers.length; n++) {
+			OptParser parser = OptParser.createOptionParser("cmd" + n, "Command");
+			for (int i = 0; i < 20; i++) {
+				parser.addOption((char) ('a' + i), "option" + i, OptParser.OPTIONAL, "", "Common option " + i);
+			}
+			parsers[n] = parser.addPathOrExpression("source", OptParser.REQUIRED, "", "Source path");
+		}
+		long own = allocated() - before;
+		
+		sink += parsers.length;
+		assertTrue(String.format("Shared parsers allocate %d bytes, own %d bytes", shared, own), shared * 3 < own);
+	}
+}
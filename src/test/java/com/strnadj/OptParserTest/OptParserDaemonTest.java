@@ -0,0 +1,227 @@
+package com.strnadj.OptParserTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.BindException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strnadj.OptParser.OptParser;
+import com.strnadj.OptParser.OptParserDaemon;
+import com.strnadj.OptParser.ParseResult;
+
+/**
+ * Test daemon runs commands over unix domain socket.
+ */
+public class OptParserDaemonTest
+{
+	/** Socket directory. */
+	private Path dir;
+
+	/** Running daemon. */
+	private OptParserDaemon daemon;
+
+	/**
+	 * Echo command - prints target and paths, fails for target "fail",
+	 * prints working directory and variable ECHO of client for target "env".
+	 */
+	private static int echo(ParseResult result, OptParserDaemon.Invocation invocation, PrintStream out, PrintStream err) {
+		if ("fail".equals(result.getOptionValue("target"))) {
+			throw new IllegalStateException("Failed");
+		}
+		if ("env".equals(result.getOptionValue("target"))) {
+			out.print(invocation.getWorkingDirectory() + " " + invocation.getEnvironment().get("ECHO"));
+			return 0;
+		}
+		out.println(result.getOptionValue("target") + " " + result.getOptionValues("files"));
+		err.print("done");
+		return result.isOptionFilled("verbose") ? 3 : 0;
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		OptParser parser = OptParser.createOptionParser("echo", "Echo files")
+				.addOption('h', "help", OptParser.OPTIONAL, "", "Show this help")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.REQUIRED, "", "Target")
+				.addPathOrExpression("files", OptParser.OPTIONAL, "", "Files", OptParser.EXPRESSION_VARIADIC);
+
+		dir = Files.createTempDirectory("optparser");
+		daemon = new OptParserDaemon(parser, OptParserDaemonTest::echo, dir.resolve("daemon.sock")).start();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		daemon.close();
+		Files.deleteIfExists(dir);
+	}
+
+	/**
+	 * Call daemon, return exit code, stdout and stderr.
+	 */
+	private String call(String... args) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		int code = OptParserDaemon.call(daemon.getPath(), args, out, err);
+		return code + "|" + out.toString("UTF-8") + "|" + err.toString("UTF-8");
+	}
+
+	/**
+	 * Test output, exit codes and errors.
+	 */
+	@Test
+	public void testCall() throws Exception {
+		assertEquals("Invalid run", "0|/tmp [a, ž b]\n|done", call("-t", "/tmp", "a", "\"ž b\""));
+		assertEquals("Invalid exit code", "3|x []\n|done", call("-v", "--target", "x"));
+
+		String missing = call("-v");
+		assertTrue("Invalid usage error: " + missing, missing.startsWith(OptParserDaemon.EXIT_USAGE + "||echo: "));
+
+		String failed = call("-t", "fail");
+		assertTrue("Invalid failure: " + failed, failed.startsWith(OptParserDaemon.EXIT_FAILURE + "||java.lang.IllegalStateException: Failed"));
+
+		String help = call("-h");
+		assertTrue("Invalid help: " + help, help.startsWith("0|") && help.contains("Show this help"));
+
+		// Working directory and environment of client
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int code = OptParserDaemon.call(daemon.getPath(), new String[] {"-t", "env"}, dir, Collections.singletonMap("ECHO", "a=b"), out, new ByteArrayOutputStream());
+		assertEquals("Invalid exit code", 0, code);
+		assertEquals("Invalid invocation", dir + " a=b", out.toString("UTF-8"));
+	}
+
+	/**
+	 * Test socket of running daemon is kept, stale one is replaced.
+	 */
+	@Test
+	public void testSocketInUse() throws Exception {
+		OptParser parser = OptParser.createOptionParser("echo", "Echo");
+		try {
+			new OptParserDaemon(parser, OptParserDaemonTest::echo, daemon.getPath()).close();
+			fail("Socket of running daemon taken over");
+		} catch (BindException e) {
+			// Expected
+		}
+		assertEquals("Running daemon not reachable", "0|x []\n|done", call("-t", "x"));
+
+		// Closed channel leaves socket file without listener
+		Path stale = dir.resolve("stale.sock");
+		ServerSocketChannel old = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		old.bind(UnixDomainSocketAddress.of(stale));
+		old.close();
+		assertTrue("Missing stale socket", Files.exists(stale));
+
+		new OptParserDaemon(parser, OptParserDaemonTest::echo, stale).close();
+		assertTrue("Socket file left", !Files.exists(stale));
+	}
+
+	/**
+	 * Test request over byte budget is refused before its data is read.
+	 */
+	@Test
+	public void testRequestBudget() throws Exception {
+		try (SocketChannel c = SocketChannel.open(UnixDomainSocketAddress.of(daemon.getPath()))) {
+			ByteBuffer request = ByteBuffer.allocate(8);
+			request.putInt(1).putInt(Integer.MAX_VALUE).flip();
+			c.write(request);
+			assertEquals("Connection not closed", -1, c.read(ByteBuffer.allocate(1)));
+		}
+		assertEquals("Daemon not running", "0|x []\n|done", call("-t", "x"));
+	}
+
+	/**
+	 * Test connections over limit wait.
+	 */
+	@Test
+	public void testMaxConnections() throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		OptParser parser = OptParser.createOptionParser("wait", "Wait");
+		OptParserDaemon limited = new OptParserDaemon(parser, (result, invocation, out, err) -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			started.countDown();
+			Thread.sleep(50);
+			running.decrementAndGet();
+			return 0;
+		}, dir.resolve("limited.sock"), 1).start();
+		try {
+			Thread[] clients = new Thread[4];
+			for (int i = 0; i < clients.length; i++) {
+				clients[i] = new Thread(() -> {
+					try {
+						OptParserDaemon.call(limited.getPath(), new String[0], new ByteArrayOutputStream(), new ByteArrayOutputStream());
+					} catch (IOException e) {
+						throw new IllegalStateException(e);
+					}
+				});
+				clients[i].start();
+			}
+			assertTrue("Not started", started.await(10, TimeUnit.SECONDS));
+			for (Thread t : clients) {
+				t.join();
+			}
+			assertEquals("Too many connections handled at once", 1, maxRunning.get());
+		} finally {
+			limited.close();
+		}
+	}
+
+	/**
+	 * Test launcher script gives same output and exit code.
+	 */
+	@Test
+	public void testLauncherScript() throws Exception {
+		File script = new File("bin/optparser-client");
+		Assume.assumeTrue(script.canExecute());
+
+		ProcessBuilder pb = new ProcessBuilder(script.getPath(), "-v", "-t", "x", "a");
+		pb.environment().put("OPTPARSER_SOCKET", daemon.getPath().toString());
+		pb.redirectErrorStream(true);
+
+		Process p;
+		try {
+			p = pb.start();
+		} catch (IOException e) {
+			// No python3 interpreter
+			Assume.assumeTrue(false);
+			return;
+		}
+		String output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+		int code = p.waitFor();
+		Assume.assumeTrue(!output.contains("No such file or directory"));
+
+		assertEquals("Invalid output", "x [a]\ndone", output);
+		assertEquals("Invalid exit code", 3, code);
+
+		// Working directory and environment are forwarded
+		pb.command(script.getAbsolutePath(), "-t", "env");
+		pb.directory(dir.toFile());
+		pb.environment().put("ECHO", "from script");
+		p = pb.start();
+		output = new String(p.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+		assertEquals("Invalid exit code", 0, p.waitFor());
+		assertEquals("Invalid invocation", dir.toRealPath() + " from script", output);
+	}
+}
@@ -0,0 +1,88 @@
+package com.strnadj.OptParserTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+import com.strnadj.OptParser.OptParser;
+import com.strnadj.OptParser.exceptions.UnexpectedOption;
+
+/**
+ * Test JFR events of parse stages.
+ */
+public class OptParserEventsTest
+{
+	/**
+	 * Parse with recording and return count of events by name.
+	 */
+	private Map<String, Integer> record(OptParser parser, String [] args) throws Exception {
+		Recording recording = new Recording();
+		recording.enable("com.strnadj.OptParser.Tokenize").withThreshold(java.time.Duration.ZERO);
+		recording.enable("com.strnadj.OptParser.OptionResolve").withThreshold(java.time.Duration.ZERO);
+		recording.enable("com.strnadj.OptParser.ValueBinding").withThreshold(java.time.Duration.ZERO);
+		recording.enable("com.strnadj.OptParser.PositionalAssignment").withThreshold(java.time.Duration.ZERO);
+		recording.enable("com.strnadj.OptParser.ParseFailure").withThreshold(java.time.Duration.ZERO);
+		recording.start();
+		
+		try {
+			parser.parseArguments(args);
+		} catch (UnexpectedOption e) {
+			// Recorded as failure event
+		}
+		recording.stop();
+		
+		File file = File.createTempFile("optparser", ".jfr");
+		Map<String, Integer> ret = new HashMap<String, Integer>();
+		try {
+			recording.dump(file.toPath());
+			for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+				String name = event.getEventType().getName();
+				assertEquals("Invalid option count", 2, event.getInt("optionCount"));
+				ret.put(name, ret.containsKey(name) ? ret.get(name) + 1 : 1);
+			}
+		} finally {
+			recording.close();
+			file.delete();
+		}
+		return ret;
+	}
+	
+	/**
+	 * Test events of successful parse.
+	 */
+	@Test
+	public void testParseEvents() throws Exception {
+		OptParser parser = OptParser.createOptionParser("test", "Test program")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, "", "Target")
+				.addPathOrExpression("path", OptParser.REQUIRED, "", "Path");
+		
+		Map<String, Integer> events = record(parser, new String[] {"-t", "x", "path"});
+		assertEquals("Invalid tokenize events", Integer.valueOf(1), events.get("com.strnadj.OptParser.Tokenize"));
+		assertEquals("Invalid resolve events", Integer.valueOf(1), events.get("com.strnadj.OptParser.OptionResolve"));
+		assertEquals("Invalid binding events", Integer.valueOf(1), events.get("com.strnadj.OptParser.ValueBinding"));
+		assertEquals("Invalid positional events", Integer.valueOf(1), events.get("com.strnadj.OptParser.PositionalAssignment"));
+		assertTrue("Unexpected failure event", !events.containsKey("com.strnadj.OptParser.ParseFailure"));
+	}
+	
+	/**
+	 * Test failure event.
+	 */
+	@Test
+	public void testFailureEvent() throws Exception {
+		OptParser parser = OptParser.createOptionParser("test", "Test program")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, "", "Target")
+				.addPathOrExpression("path", OptParser.OPTIONAL, "", "Path");
+		
+		Map<String, Integer> events = record(parser, new String[] {"-x"});
+		assertEquals("Invalid failure events", Integer.valueOf(1), events.get("com.strnadj.OptParser.ParseFailure"));
+	}
+}
@@ -0,0 +1,156 @@
+package com.strnadj.OptParserTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.strnadj.OptParser.OptParser;
+import com.strnadj.OptParser.OptParserGenerator;
+
+/**
+ * Test generated parser gives same results as interpreted parser.
+ */
+public class OptParserGeneratorTest
+{
+	/** Generated parser class. */
+	private Class<?> generated;
+
+	/** Directory of generated sources and classes. */
+	private Path dir;
+
+	/** Loader of generated classes. */
+	private URLClassLoader loader;
+
+	/**
+	 * Parser definition.
+	 */
+	public static OptParser createParser() {
+		return OptParser.createOptionParser("cp", "Copy \"files\"")
+				.addOption('h', "help", OptParser.OPTIONAL, "", "Show this help")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "false", "Verbose output")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, ".", "Target directory")
+				.addOptionRequiredValue('m', "mode", OptParser.REQUIRED, null, "File mode")
+				.addOption('q', "quiet", OptParser.OPTIONAL, "false", "Quiet output")
+				.addOption('l', "link", OptParser.OPTIONAL, "false", "Link instead of copy")
+				.addConstraint(OptParser.CONSTRAINT_AT_MOST_ONE, "verbose", "quiet")
+				.addRequires("link", "target")
+				.addPathOrExpression("source", OptParser.REQUIRED, "", "Source path")
+				.addPathOrExpression("destination", OptParser.OPTIONAL, "dst", "Destination path");
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeTrue(compiler != null);
+
+		dir = Files.createTempDirectory("optparser-gen");
+
+		File source = OptParserGenerator.write(createParser(), "gen", "CpParser", dir.toFile());
+		String classpath = new File(OptParser.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+		assertEquals("Generated source does not compile", 0, compiler.run(null, null, null, "-classpath", classpath, "-d", dir.toString(), source.getPath()));
+
+		loader = new URLClassLoader(new URL[] {dir.toUri().toURL()}, OptParser.class.getClassLoader());
+		generated = loader.loadClass("gen.CpParser");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (loader != null) {
+			loader.close();
+		}
+		if (dir != null) {
+			// Files before their directories
+			try (Stream<Path> files = Files.walk(dir)) {
+				files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+			}
+			assertTrue("Generated files left", !Files.exists(dir));
+		}
+	}
+
+	/**
+	 * Parse with generated parser, return exception class or null.
+	 */
+	private Object parseGenerated(Object instance, String [] args) throws Exception {
+		Method parse = generated.getMethod("parseArguments", String[].class);
+		try {
+			parse.invoke(instance, (Object) args);
+			return null;
+		} catch (InvocationTargetException e) {
+			return e.getCause().getClass().getName() + ": " + e.getCause().getMessage();
+		}
+	}
+
+	/**
+	 * Parse with interpreted parser, return exception class or null.
+	 */
+	private Object parseInterpreted(OptParser parser, String [] args) {
+		try {
+			parser.parseArguments(args);
+			return null;
+		} catch (Exception e) {
+			return e.getClass().getName() + ": " + e.getMessage();
+		}
+	}
+
+	/**
+	 * Compare results and exceptions for inputs.
+	 */
+	@Test
+	public void testSameResults() throws Exception {
+		String [][] inputs = {
+				{"-m", "0644", "a"},
+				{"--mode", "0644", "-v", "\"a b\"", "c"},
+				{"-t", "/tmp", "--mode", "1", "a"},
+				{"-v"},
+				{"-h"},
+				{"-m"},
+				{"-m", "-v"},
+				{"-x"},
+				{"--unknown"},
+				{"-m", "1", "a", "b", "c"},
+				{"-m", "'1", "a"},
+				{"-m", "1"},
+				{"-m", "1", "-t", "x", "--", "-z"},
+				{"-m", "1", "a", "--", "b"},
+				{"-m", "1", "\"a", "--", "b\""},
+				{"--", "-m", "1"},
+				{"-m", "1", "-v", "-q", "a"},
+				{"-m", "1", "-l", "a"},
+				{"-m", "1", "-l", "-t", "x", "a"},
+				{"-h", "-m", "1", "-v", "-q"},
+		};
+		String [] names = {"help", "verbose", "target", "mode", "quiet", "link", "source", "destination", "unknown"};
+
+		// Both parsers are reused - values of previous input must not leak
+		OptParser parser = createParser();
+		Object instance = generated.getDeclaredConstructor().newInstance();
+		for (String [] input : inputs) {
+			assertEquals("Invalid exception", parseInterpreted(parser, input), parseGenerated(instance, input));
+
+			for (String name : names) {
+				assertEquals("Invalid value of " + name, parser.getOptionValue(name), generated.getMethod("getOptionValue", String.class).invoke(instance, name));
+				assertEquals("Invalid filled of " + name, parser.isOptionFilled(name), generated.getMethod("isOptionFilled", String.class).invoke(instance, name));
+			}
+			assertEquals("Invalid remaining arguments", parser.getRemainingArguments(), generated.getMethod("getRemainingArguments").invoke(instance));
+		}
+
+		assertEquals("Invalid help", createParser().getHelp(), generated.getMethod("getHelp").invoke(generated.getDeclaredConstructor().newInstance()));
+	}
+}
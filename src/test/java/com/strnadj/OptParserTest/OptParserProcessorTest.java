@@ -0,0 +1,226 @@
+package com.strnadj.OptParserTest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.strnadj.OptParser.OptParser;
+import com.strnadj.OptParser.OptParserProcessor;
+import com.strnadj.OptParser.exceptions.MissingOptions;
+
+/**
+ * Test reactive parsing pipeline.
+ */
+public class OptParserProcessorTest
+{
+	/**
+	 * Parser definition.
+	 */
+	private static OptParser createParser() {
+		return OptParser.createOptionParser("cp", "Copy")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.REQUIRED, "", "Target");
+	}
+
+	/**
+	 * Subscriber requesting one outcome at a time, checks bounded buffering.
+	 */
+	private static class Collector implements Flow.Subscriber<OptParserProcessor.Outcome> {
+		final List<String> outcomes = new ArrayList<String>();
+		final CountDownLatch finished = new CountDownLatch(1);
+		final AtomicLong upstreamRequested;
+		volatile long maxBuffered = 0;
+		Flow.Subscription subscription;
+
+		Collector(AtomicLong upstreamRequested) {
+			this.upstreamRequested = upstreamRequested;
+		}
+
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscription.request(1);
+		}
+
+		public void onNext(OptParserProcessor.Outcome item) {
+			maxBuffered = Math.max(maxBuffered, upstreamRequested.get() - outcomes.size());
+			outcomes.add(item.isSuccess()
+					? item.getResult().getOptionValue("target")
+					: item.getFailure().getClass().getSimpleName());
+			subscription.request(1);
+		}
+
+		public void onError(Throwable throwable) {
+			outcomes.add("error");
+			finished.countDown();
+		}
+
+		public void onComplete() {
+			finished.countDown();
+		}
+	}
+
+	/**
+	 * Run commands through processor, return outcomes.
+	 */
+	private Collector run(ExecutorService executor, int count) throws Exception {
+		AtomicLong upstreamRequested = new AtomicLong();
+		OptParserProcessor processor = new OptParserProcessor(createParser(), executor, 8);
+		Collector collector = new Collector(upstreamRequested);
+		processor.subscribe(collector);
+
+		// Queue stand-in, counts requests of processor
+		SubmissionPublisher<String> queue = new SubmissionPublisher<String>();
+		queue.subscribe(new Flow.Subscriber<String>() {
+			public void onSubscribe(Flow.Subscription s) {
+				processor.onSubscribe(new Flow.Subscription() {
+					public void request(long n) {
+						upstreamRequested.addAndGet(n);
+						s.request(n);
+					}
+
+					public void cancel() {
+						s.cancel();
+					}
+				});
+			}
+
+			public void onNext(String item) {
+				processor.onNext(item);
+			}
+
+			public void onError(Throwable throwable) {
+				processor.onError(throwable);
+			}
+
+			public void onComplete() {
+				processor.onComplete();
+			}
+		});
+
+		for (int i = 0; i < count; i++) {
+			queue.submit(i % 10 == 9 ? "-v" : "-t /tmp" + i);
+		}
+		queue.close();
+
+		assertTrue("Pipeline not finished", collector.finished.await(30, TimeUnit.SECONDS));
+		return collector;
+	}
+
+	/**
+	 * Test order, typed failures and bounded buffering with and without executor.
+	 */
+	@Test
+	public void testProcessor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for (ExecutorService e : new ExecutorService[] {null, executor}) {
+				Collector collector = run(e, 500);
+
+				assertEquals("Invalid count", 500, collector.outcomes.size());
+				for (int i = 0; i < 500; i++) {
+					assertEquals("Invalid order", i % 10 == 9 ? MissingOptions.class.getSimpleName() : "/tmp" + i, collector.outcomes.get(i));
+				}
+				assertTrue("Unbounded buffering: " + collector.maxBuffered, collector.maxBuffered <= 8);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Test invalid request is signalled after onNext returns and cancels upstream.
+	 */
+	@Test
+	public void testInvalidRequest() throws Exception {
+		OptParserProcessor processor = new OptParserProcessor(createParser(), 8);
+		AtomicBoolean inOnNext = new AtomicBoolean();
+		List<Object> signals = new ArrayList<Object>();
+		processor.subscribe(new Flow.Subscriber<OptParserProcessor.Outcome>() {
+			Flow.Subscription subscription;
+
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(2);
+			}
+
+			public void onNext(OptParserProcessor.Outcome item) {
+				inOnNext.set(true);
+				signals.add(item.getCommand());
+				subscription.request(0);
+				inOnNext.set(false);
+			}
+
+			public void onError(Throwable throwable) {
+				assertFalse("Error signalled inside onNext", inOnNext.get());
+				signals.add(throwable.getClass());
+			}
+
+			public void onComplete() {
+				signals.add("complete");
+			}
+		});
+
+		AtomicBoolean upstreamCancelled = new AtomicBoolean();
+		processor.onSubscribe(new Flow.Subscription() {
+			public void request(long n) {}
+
+			public void cancel() {
+				upstreamCancelled.set(true);
+			}
+		});
+		processor.onNext("-t a");
+		processor.onNext("-t b");
+
+		assertEquals("Invalid signals", Arrays.asList("-t a", IllegalArgumentException.class), signals);
+		assertTrue("Upstream not cancelled", upstreamCancelled.get());
+	}
+
+	/**
+	 * Test end of options in command.
+	 */
+	@Test
+	public void testEndOfOptions() throws Exception {
+		OptParserProcessor processor = new OptParserProcessor(createParser(), 8);
+		List<OptParserProcessor.Outcome> outcomes = new ArrayList<OptParserProcessor.Outcome>();
+		processor.subscribe(new Flow.Subscriber<OptParserProcessor.Outcome>() {
+			public void onSubscribe(Flow.Subscription subscription) {
+				subscription.request(Long.MAX_VALUE);
+			}
+
+			public void onNext(OptParserProcessor.Outcome item) {
+				outcomes.add(item);
+			}
+
+			public void onError(Throwable throwable) {}
+
+			public void onComplete() {}
+		});
+		processor.onSubscribe(new Flow.Subscription() {
+			public void request(long n) {}
+
+			public void cancel() {}
+		});
+		processor.onNext("-t /tmp -- -v -x");
+		processor.onNext("-t \"a -- b\"");
+
+		assertTrue("Invalid outcome", outcomes.get(0).isSuccess());
+		assertFalse("Invalid filled", outcomes.get(0).getResult().isOptionFilled("verbose"));
+		assertEquals("Invalid remaining", Arrays.asList("-v", "-x"), outcomes.get(0).getResult().getRemainingArguments());
+		assertEquals("Invalid quoted", "\"a -- b\"", outcomes.get(1).getResult().getOptionValue("target"));
+		assertTrue("Invalid quoted remaining", outcomes.get(1).getResult().getRemainingArguments().isEmpty());
+	}
+}
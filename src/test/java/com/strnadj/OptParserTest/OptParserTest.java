@@ -1,14 +1,45 @@
 package com.strnadj.OptParserTest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
-import org.omg.CosNaming.NamingContextExtPackage.AddressHelper;
 
+import com.strnadj.OptParser.AuditLog;
+import com.strnadj.OptParser.ColumnarStore;
+import com.strnadj.OptParser.LazyPathsOrExpressions;
+import com.strnadj.OptParser.MemoizedConverter;
 import com.strnadj.OptParser.OptParser;
+import com.strnadj.OptParser.OptParserRegistry;
+import com.strnadj.OptParser.OptParserSpec;
+import com.strnadj.OptParser.OptionKey;
+import com.strnadj.OptParser.OptionSet;
+import com.strnadj.OptParser.ParallelTokenizer;
+import com.strnadj.OptParser.ParseDiagnostics;
+import com.strnadj.OptParser.ParseProfile;
+import com.strnadj.OptParser.ParseResult;
+import com.strnadj.OptParser.ReloadingOptParser;
+import com.strnadj.OptParser.Tokenizer;
+import com.strnadj.OptParser.exceptions.ConstraintViolation;
+import com.strnadj.OptParser.exceptions.InvalidOptionValue;
 import com.strnadj.OptParser.exceptions.MissingOptions;
 import com.strnadj.OptParser.exceptions.MissingOptionsHelp;
 import com.strnadj.OptParser.exceptions.OverlapingBracketsException;
@@ -256,4 +287,908 @@ public class OptParserTest
 		assertEquals("Invalid non-filed", false, parser.isOptionFilled("parameter2"));
 		
 	}
+	
+	/**
+	 * Test message lists all missing required options.
+	 */
+	@Test
+	public void testMissingOptionsMessage() throws Exception {
+		OptParser parser = OptParser.createOptionParser("test", "Test program")
+				.addOption('p', "parameter", OptParser.REQUIRED, "", "Test parameter")
+				.addOption('f', "parameter2", OptParser.REQUIRED, "", "Test parameter 2")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addPathOrExpression("testpoe", OptParser.REQUIRED, "", "Path for test");
+		
+		try {
+			parser.parseArguments("-f");
+			fail("Missing options not thrown");
+		} catch (MissingOptions e) {
+			assertTrue("Invalid missing list", e.getMessage().startsWith("Missing options for command: test - parameter, testpoe\n"));
+		}
+	}
+	
+	/**
+	 * Test variadic path or expression in the middle (cp SRC... DST).
+	 */
+	@Test
+	public void testVariadicPOE() throws Exception {
+		OptParser parser = OptParser.createOptionParser("cp", "Copy files")
+				.addOption('R', "recursive", OptParser.OPTIONAL, "", "Recursive")
+				.addPathOrExpression("source", OptParser.REQUIRED, "", "Sources", OptParser.EXPRESSION_VARIADIC)
+				.addPathOrExpression("destination", OptParser.REQUIRED, "", "Destination");
+		
+		parser.parseArguments("-R a b \"c d\" target");
+		
+		assertEquals("Invalid variadic values", Arrays.asList("a", "b", "c d"), parser.getOption("source").getValues());
+		assertEquals("Invalid destination", "target", parser.getOption("destination").getValue());
+	}
+	
+	/**
+	 * Test trailing variadic path or expression with many values.
+	 */
+	@Test
+	public void testTrailingVariadicPOE() throws Exception {
+		OptParser parser = OptParser.createOptionParser("rm", "Remove files")
+				.addPathOrExpression("first", OptParser.REQUIRED, "", "First")
+				.addPathOrExpression("paths", OptParser.OPTIONAL, "", "Paths", OptParser.EXPRESSION_VARIADIC);
+		
+		String [] args = new String[100000];
+		for (int i = 0; i < args.length; i++) {
+			args[i] = "p" + i;
+		}
+		parser.parseArguments(args);
+		
+		assertEquals("Invalid first", "p0", parser.getOption("first").getValue());
+		assertEquals("Invalid count of variadic values", args.length - 1, parser.getOption("paths").getValues().size());
+		assertEquals("Invalid last value", "p99999", parser.getOption("paths").getValues().get(args.length - 2));
+	}
+	
+	/**
+	 * Required variadic path or expression without values.
+	 */
+	@Test(expected=MissingOptions.class)
+	public void testMissingVariadicPOE() throws Exception {
+		OptParser parser = OptParser.createOptionParser("cp", "Copy files")
+				.addPathOrExpression("source", OptParser.REQUIRED, "", "Sources", OptParser.EXPRESSION_VARIADIC)
+				.addPathOrExpression("destination", OptParser.REQUIRED, "", "Destination");
+		
+		parser.parseArguments("target");
+	}
+	
+	/**
+	 * Test lazy trailing paths or expressions.
+	 */
+	@Test
+	public void testLazyPOE() throws Exception {
+		OptParser parser = OptParser.createOptionParser("xargs", "Process paths")
+				.addOptionRequiredValue('j', "jobs", OptParser.OPTIONAL, "1", "Jobs")
+				.addPathOrExpression("command", OptParser.REQUIRED, "", "Command")
+				.addPathOrExpression("paths", OptParser.REQUIRED, "", "Paths", OptParser.EXPRESSION_VARIADIC);
+		
+		LazyPathsOrExpressions paths = parser.parseArgumentsLazily(new String[] {"-j", "4", "rm", "a", "\"b", "c\"", "-d"});
+		
+		assertEquals("Invalid jobs", "4", parser.getOptionValue("jobs"));
+		assertEquals("Invalid command", "rm", parser.getOption("command").getValue());
+		
+		List<String> values = new ArrayList<String>();
+		for (String path : paths) {
+			values.add(path);
+		}
+		assertEquals("Invalid lazy values", Arrays.asList("a", "b c", "-d"), values);
+	}
+	
+	/**
+	 * Parser with constraints.
+	 */
+	private OptParser createExportParser() {
+		return OptParser.createOptionParser("export", "Export data")
+				.addOption('j', "json", OptParser.OPTIONAL, "", "JSON output")
+				.addOption('c', "csv", OptParser.OPTIONAL, "", "CSV output")
+				.addOption('x', "xml", OptParser.OPTIONAL, "", "XML output")
+				.addOptionRequiredValue('k', "key", OptParser.OPTIONAL, "", "Key file")
+				.addOptionRequiredValue('e', "cert", OptParser.OPTIONAL, "", "Certificate file")
+				.addConstraint(OptParser.CONSTRAINT_EXACTLY_ONE, "json", "csv", "xml")
+				.addRequires("key", "cert");
+	}
+	
+	/**
+	 * Test constraints over options.
+	 */
+	@Test
+	public void testConstraints() throws Exception {
+		OptParser parser = createExportParser();
+		parser.parseArguments("--json -k key.pem -e cert.pem");
+		assertTrue("Invalid filled", parser.isOptionFilled("json"));
+		
+		String [] invalid = {"", "--json --csv", "--xml -k key.pem"};
+		for (String cmdLine : invalid) {
+			try {
+				createExportParser().parseArguments(cmdLine);
+				fail("Constraint violation not thrown for: " + cmdLine);
+			} catch (ConstraintViolation e) {
+				// Expected
+			}
+		}
+		
+		// Requires by constraint type - option first, then required ones
+		OptParser requires = OptParser.createOptionParser("sign", "Sign data")
+				.addOptionRequiredValue('k', "key", OptParser.OPTIONAL, "", "Key file")
+				.addOptionRequiredValue('e', "cert", OptParser.OPTIONAL, "", "Certificate file")
+				.addConstraint(OptParser.CONSTRAINT_REQUIRES, "key", "cert");
+		requires.parseArguments("-e cert.pem");
+		try {
+			requires.parseArguments("-k key.pem");
+			fail("Constraint violation not thrown for requires");
+		} catch (ConstraintViolation e) {
+			assertTrue("Invalid message", e.getMessage().contains("key requires options: cert"));
+		}
+	}
+	
+	/**
+	 * Test registry returns shared parser for equal specification.
+	 */
+	@Test
+	public void testRegistry() throws Exception {
+		OptParserRegistry registry = new OptParserRegistry(2);
+		
+		OptParser ls = registry.get(OptParserSpec.createSpec("ls", "List")
+				.addOption('a', "all", OptParser.OPTIONAL, "", "All files")
+				.addPathOrExpression("path", OptParser.OPTIONAL, ".", "Path"));
+		OptParser lsAgain = registry.get(OptParserSpec.createSpec("ls", "List")
+				.addOption('a', "all", OptParser.OPTIONAL, "", "All files")
+				.addPathOrExpression("path", OptParser.OPTIONAL, ".", "Path"));
+		assertTrue("Parser is not shared", ls == lsAgain);
+		
+		registry.get(OptParserSpec.createSpec("cp", "Copy"));
+		registry.get(OptParserSpec.createSpec("rm", "Remove"));
+		
+		assertEquals("Invalid hits", 1, registry.getHits());
+		assertEquals("Invalid misses", 3, registry.getMisses());
+		assertEquals("Invalid evictions", 1, registry.getEvictions());
+		assertEquals("Invalid size", 2, registry.size());
+		
+		ls.parseArguments("-a /tmp");
+		assertEquals("Invalid path", "/tmp", ls.getOptionValue("path"));
+	}
+	
+	/**
+	 * Test next job on registry parser doesn't see values of previous one.
+	 */
+	@Test
+	public void testRegistryParseTwice() throws Exception {
+		OptParserRegistry registry = new OptParserRegistry(2);
+		OptParserSpec spec = OptParserSpec.createSpec("ls", "List")
+				.addOption('a', "all", OptParser.OPTIONAL, "", "All files")
+				.addPathOrExpression("path", OptParser.OPTIONAL, ".", "Path");
+		
+		OptParser first = registry.get(spec);
+		first.parseArguments("-a /tmp");
+		assertTrue("Option is not filled", first.isOptionFilled("all"));
+		assertEquals("Invalid path", "/tmp", first.getOptionValue("path"));
+		
+		OptParser second = registry.get(spec);
+		second.parseArguments(new String[0]);
+		assertTrue("Parser is not shared", first == second);
+		assertFalse("Option of previous job is filled", second.isOptionFilled("all"));
+		assertFalse("Path of previous job is filled", second.isOptionFilled("path"));
+		assertEquals("Invalid default path", ".", second.getOptionValue("path"));
+	}
+	
+	/**
+	 * Test short names outside BMP.
+	 */
+	@Test
+	public void testCodePointShortName() throws Exception {
+		int rocket = 0x1F680;
+		OptParser parser = OptParser.createOptionParser("launch", "Launch")
+				.addOption(rocket, "rocket", OptParser.OPTIONAL, "", "Launch rocket")
+				.addOptionRequiredValue(0xE9, "energy", OptParser.OPTIONAL, "", "Energy")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose");
+		
+		parser.parseArguments(new String[] {"-" + new String(Character.toChars(rocket)), "-\u00e9", "10", "-v"});
+		
+		assertTrue("Invalid rocket", parser.isOptionFilled("rocket"));
+		assertEquals("Invalid energy", "10", parser.getOptionValue("energy"));
+		assertTrue("Invalid verbose", parser.isOptionFilled("verbose"));
+		assertTrue("Invalid help", parser.getHelp().contains("-" + new String(Character.toChars(rocket)) + ", --rocket"));
+	}
+	
+	/**
+	 * Test parse result stores only given options and keeps definitions untouched.
+	 */
+	@Test
+	public void testParseResult() throws Exception {
+		OptParser parser = OptParser.createOptionParser("test", "Test program")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, ".", "Target")
+				.addOptionRequiredValue('m', "mode", OptParser.OPTIONAL, "0644", "Mode")
+				.addPathOrExpression("path", OptParser.REQUIRED, "", "Path");
+		
+		ParseResult first = parser.parse(new String[] {"-t", "/tmp", "a"});
+		ParseResult second = parser.parse(new String[] {"-v", "b"});
+		
+		assertEquals("Invalid filled count", 2, first.getFilledCount());
+		assertEquals("Invalid target", "/tmp", first.getOptionValue("target"));
+		assertEquals("Invalid default", "0644", first.getOptionValue("mode"));
+		assertEquals("Invalid path", "a", first.getOptionValue("path"));
+		assertTrue("Invalid verbose", !first.isOptionFilled("verbose"));
+		
+		assertEquals("Invalid default target", ".", second.getOptionValue("target"));
+		assertEquals("Invalid path", "b", second.getOptionValue("path"));
+		assertTrue("Invalid verbose", second.isOptionFilled("verbose"));
+		
+		// Definitions are untouched
+		assertEquals("Definition changed", null, parser.getOption("target"));
+	}
+	
+	/**
+	 * Test columnar store on heap and in memory-mapped files.
+	 */
+	@Test
+	public void testColumnarStore() throws Exception {
+		OptParser parser = OptParser.createOptionParser("cp", "Copy")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, ".", "Target")
+				.addPathOrExpression("files", OptParser.OPTIONAL, "", "Files", OptParser.EXPRESSION_VARIADIC);
+		
+		Path dir = Files.createTempDirectory("columns");
+		ColumnarStore[] stores = {ColumnarStore.create(parser), ColumnarStore.create(parser, dir)};
+		
+		for (ColumnarStore store : stores) {
+			try {
+				for (int i = 0; i < 1000; i++) {
+					store.add(i % 2 == 0 ? new String[] {"-v", "-t", "/tmp" + (i % 3), "a", "b" + i} : new String[] {"x"});
+				}
+				try {
+					store.add(new String[] {"-t"});
+					fail("Missing value expected");
+				} catch (MissingOptionValue e) {
+					// Row is not added
+				}
+				
+				assertEquals("Invalid row count", 1000, store.getRowCount());
+				assertTrue("Invalid verbose", store.isOptionFilled(998, "verbose"));
+				assertTrue("Invalid verbose", !store.isOptionFilled(999, "verbose"));
+				assertEquals("Invalid target", "/tmp2", store.getOptionValue(998, "target"));
+				assertEquals("Invalid default", ".", store.getOptionValue(999, "target"));
+				assertEquals("Invalid files", Arrays.asList("a", "b998"), store.getOptionValues(998, "files"));
+				assertEquals("Invalid files", Arrays.asList("x"), store.getOptionValues(999, "files"));
+				
+				int target = store.getColumnId("target");
+				assertEquals("Invalid dictionary", 3, store.getDictionarySize(target));
+				assertEquals("Invalid code", "/tmp0", store.getDictionaryValue(target, store.getCode(0, target)));
+				assertEquals("Invalid code", -1, store.getCode(1, target));
+			} finally {
+				store.close();
+			}
+		}
+		
+		String[] left = dir.toFile().list();
+		assertEquals("Spill files left", 0, left.length);
+		Files.delete(dir);
+	}
+	
+	/**
+	 * Test columnar store with full dictionary keeps values without deduplication.
+	 */
+	@Test
+	public void testColumnarStoreFullDictionary() throws Exception {
+		OptParser parser = OptParser.createOptionParser("cp", "Copy")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, ".", "Target")
+				.addPathOrExpression("files", OptParser.OPTIONAL, "", "Files", OptParser.EXPRESSION_VARIADIC);
+		
+		Path dir = Files.createTempDirectory("columns");
+		ColumnarStore store = ColumnarStore.create(parser, dir, 2);
+		try {
+			for (int i = 0; i < 100; i++) {
+				store.add(new String[] {"-t", "/tmp" + (i % 3), "\u017elu\u0165ou\u010dk\u00fd-" + i, "a"});
+			}
+			
+			int target = store.getColumnId("target");
+			// Only /tmp0 and /tmp1 are deduplicated, files "a" too
+			assertEquals("Invalid dictionary", 2 + 33, store.getDictionarySize(target));
+			assertEquals("Invalid full dictionary", 1 + 100, store.getDictionarySize(store.getColumnId("files")));
+			for (int i = 0; i < 100; i++) {
+				assertEquals("Invalid target", "/tmp" + (i % 3), store.getOptionValue(i, "target"));
+				assertEquals("Invalid files", Arrays.asList("\u017elu\u0165ou\u010dk\u00fd-" + i, "a"), store.getOptionValues(i, "files"));
+			}
+		} finally {
+			store.close();
+		}
+		Files.delete(dir);
+	}
+	
+	/**
+	 * Tokenize sequentially, return tokens or error.
+	 */
+	private static String tokenizeSequentially(String[] params) {
+		try {
+			List<String> ret = new ArrayList<String>();
+			Tokenizer tokenizer = new Tokenizer(params);
+			String token;
+			while ((token = tokenizer.nextToken()) != null) {
+				ret.add(token);
+			}
+			return ret.toString();
+		} catch (OverlapingBracketsException e) {
+			return e.getMessage();
+		}
+	}
+	
+	/**
+	 * Test long runs between delimiters (scanned in chunks).
+	 */
+	@Test
+	public void testLongTokens() throws Exception {
+		Random random = new Random(7);
+		List<String> expected = new ArrayList<String>();
+		List<String> params = new ArrayList<String>();
+		
+		StringBuilder param = new StringBuilder();
+		boolean quoted = false;
+		for (int n = 0; n < 500; n++) {
+			StringBuilder word = new StringBuilder();
+			for (int j = random.nextInt(300); j >= 0; j--) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			String token;
+			switch (random.nextInt(4)) {
+			case 0:
+				token = "'" + word + " " + word + "'";
+				break;
+			case 1:
+				token = "\"" + word + "\\\"" + word + "\"";
+				break;
+			case 2:
+				token = word + "\\ " + word;
+				break;
+			default:
+				token = word.toString();
+			}
+			// Space after closing quote is kept (own token before opening quote)
+			boolean opens = token.startsWith("'") || token.startsWith("\"");
+			if (quoted && opens) {
+				expected.add(" ");
+			}
+			expected.add(quoted && !opens ? " " + token : token);
+			quoted = token.endsWith("'") || token.endsWith("\"");
+			
+			// Tokens in one or more parameters
+			if (param.length() > 0) {
+				param.append(' ');
+			}
+			param.append(token);
+			if (random.nextBoolean()) {
+				params.add(param.toString());
+				param.setLength(0);
+			}
+		}
+		if (param.length() > 0) {
+			params.add(param.toString());
+		}
+		
+		String[] arr = params.toArray(new String[params.size()]);
+		assertEquals("Invalid sequential tokens", expected.toString(), tokenizeSequentially(arr));
+		assertEquals("Invalid parallel tokens", expected, ParallelTokenizer.tokenize(arr, 1000));
+	}
+	
+	/**
+	 * Test parallel tokenizer gives same tokens and errors as sequential one.
+	 */
+	@Test
+	public void testParallelTokenizer() throws Exception {
+		Random random = new Random(42);
+		String alphabet = "ab  \\'\"";
+		
+		for (int n = 0; n < 3000; n++) {
+			String[] params = new String[1 + random.nextInt(4)];
+			for (int i = 0; i < params.length; i++) {
+				StringBuilder sb = new StringBuilder();
+				int length = random.nextInt(16);
+				for (int j = 0; j < length; j++) {
+					sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+				}
+				params[i] = sb.toString();
+			}
+			
+			String expected = tokenizeSequentially(params);
+			for (int chunk = 1; chunk <= 5; chunk++) {
+				String actual;
+				try {
+					actual = ParallelTokenizer.tokenize(params, chunk).toString();
+				} catch (OverlapingBracketsException e) {
+					actual = e.getMessage();
+				}
+				assertEquals("Invalid tokens of " + Arrays.toString(params) + ", chunk " + chunk, expected, actual);
+			}
+		}
+	}
+	
+	/**
+	 * Test collecting mode reports every problem with positions.
+	 */
+	@Test
+	public void testParseCollectingErrors() throws Exception {
+		OptParser parser = OptParser.createOptionParser("cp", "Copy")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.OPTIONAL, ".", "Target")
+				.addOptionRequiredValue('m', "mode", OptParser.REQUIRED, "", "Mode")
+				.addPathOrExpression("source", OptParser.REQUIRED, "", "Source");
+		
+		ParseDiagnostics d = parser.parseCollectingErrors(new String[] {"-x", "-t", "-v", "a", "b", "--unknown", "c"});
+		List<ParseDiagnostics.Diagnostic> all = d.getDiagnostics();
+		
+		assertEquals("Invalid diagnostics", 
+				"[0: UnexpectedOption -x, 1: MissingOptionValue -t, 5: UnexpectedOption --unknown, 4: UnknownAttribute b, 6: UnknownAttribute c, -1: MissingOptions]", 
+				all.toString());
+		assertTrue("Invalid partial verbose", d.getResult().isOptionFilled("verbose"));
+		assertEquals("Invalid partial source", "a", d.getResult().getOptionValue("source"));
+		assertEquals("Invalid default target", ".", d.getResult().getOptionValue("target"));
+		
+		// Same first error as throwing mode
+		try {
+			parser.parse(new String[] {"-x", "-t", "-v", "a", "b", "--unknown", "c"});
+			fail("Exception expected");
+		} catch (UnexpectedOption e) {
+			assertEquals("Invalid message", e.getMessage(), all.get(0).getMessage());
+		}
+		
+		// Valid command has no diagnostics
+		assertTrue("Unexpected diagnostics", !parser.parseCollectingErrors(new String[] {"-m", "1", "a"}).hasErrors());
+		
+		// Unclosed quote ends parsing, tokens before are parsed
+		d = parser.parseCollectingErrors(new String[] {"-m", "1", "'a"});
+		assertEquals("Invalid diagnostics", "[2: OverlapingBracketsException, -1: MissingOptions]", d.getDiagnostics().toString());
+		assertEquals("Invalid partial mode", "1", d.getResult().getOptionValue("mode"));
+	}
+	
+	/**
+	 * Test memoized converters are shared across parses.
+	 */
+	@Test
+	public void testConverters() throws Exception {
+		final int[] compiled = {0};
+		OptParser parser = OptParser.createOptionParser("grep", "Grep")
+				.addOptionRequiredValue('e', "regexp", OptParser.OPTIONAL, "a+", "Pattern")
+				.addOptionRequiredValue('t', "timeout", OptParser.OPTIONAL, "PT1S", "Timeout")
+				.addConverter("regexp", value -> {
+					compiled[0]++;
+					return Pattern.compile(value);
+				})
+				.addConverter("timeout", Duration::parse, 2);
+		
+		for (int i = 0; i < 10; i++) {
+			ParseResult result = parser.parse(new String[] {"-e", "b+", "-t", "PT" + (i % 3) + "S"});
+			Pattern p = result.getConvertedValue("regexp");
+			Duration d = result.getConvertedValue("timeout");
+			assertTrue("Invalid pattern", p.matcher("bbb").matches());
+			assertEquals("Invalid duration", Duration.ofSeconds(i % 3), d);
+		}
+		
+		// Default value is converted too
+		Pattern p = parser.parse(new String[0]).getConvertedValue("regexp");
+		assertEquals("Invalid default", "a+", p.pattern());
+		
+		assertEquals("Invalid compile count", 2, compiled[0]);
+		assertEquals("Invalid hits", 9, parser.getConverter("regexp").getHits());
+		assertEquals("Invalid misses", 2, parser.getConverter("regexp").getMisses());
+		assertTrue("Cache not bounded", parser.getConverter("timeout").size() <= 2);
+		
+		// Bound holds after concurrent misses
+		MemoizedConverter<Integer> numbers = new MemoizedConverter<Integer>(Integer::valueOf, 16);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t * 1000;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					try {
+						numbers.convert(String.valueOf(offset + i));
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertTrue("Cache not bounded: " + numbers.size(), numbers.size() <= 16);
+		assertEquals("Invalid evictions", 4000 - 16, numbers.getEvictions());
+		
+		// Value hit since last sweep gets second chance
+		MemoizedConverter<Integer> clock = new MemoizedConverter<Integer>(Integer::valueOf, 2);
+		clock.convert("1");
+		clock.convert("2");
+		clock.convert("1");
+		clock.convert("3");
+		clock.convert("1");
+		assertEquals("Referenced value evicted", 2, clock.getHits());
+		clock.convert("2");
+		assertEquals("Unreferenced value kept", 4, clock.getMisses());
+		
+		// Invalid values are reported, legacy accessors convert too
+		parser.parseArguments("-t never");
+		try {
+			parser.getConvertedValue("timeout");
+			fail("Invalid value expected");
+		} catch (InvalidOptionValue e) {
+			assertTrue("Invalid cause", e.getCause() instanceof DateTimeParseException);
+		}
+	}
+	
+	/**
+	 * Test stage profile is exposed as MBean and can be reset.
+	 */
+	@Test
+	public void testProfiling() throws Exception {
+		OptParser parser = OptParser.createOptionParser("cp", "Copy")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.REQUIRED, "", "Target")
+				.addPathOrExpression("source", OptParser.OPTIONAL, "", "Source")
+				.enableProfiling("cp-test");
+		
+		for (int i = 0; i < 5; i++) {
+			parser.parse(new String[] {"-v", "-t", "/tmp", "a"});
+		}
+		try {
+			parser.parse(new String[] {"-x"});
+			fail("Exception expected");
+		} catch (UnexpectedOption e) {
+			// Formatting is profiled
+		}
+		parser.getHelp();
+		
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("com.strnadj.OptParser:type=ParseProfile,name=\"cp-test\"");
+		
+		assertEquals("Invalid tokenize count", 6L, server.getAttribute(name, "TokenizeCount"));
+		assertEquals("Invalid lookup count", 6L, server.getAttribute(name, "OptionLookupCount"));
+		assertEquals("Invalid assignment count", 5L, server.getAttribute(name, "PositionalAssignmentCount"));
+		assertEquals("Invalid formatting count", 1L, server.getAttribute(name, "ExceptionFormattingCount"));
+		assertEquals("Invalid help count", 1L, server.getAttribute(name, "HelpCount"));
+		assertTrue("Invalid tokenize time", (Long) server.getAttribute(name, "TokenizeNanos") > 0);
+		
+		server.invoke(name, "reset", null, null);
+		assertEquals("Reset failed", 0L, parser.getProfile().getCount(ParseProfile.STAGE_TOKENIZE));
+		
+		// Name taken over by other parser is not unregistered by previous owner
+		OptParser other = OptParser.createOptionParser("cp", "Copy").enableProfiling("cp-test");
+		parser.disableProfiling();
+		assertTrue("MBean of other parser unregistered", server.isRegistered(name));
+		other.parse(new String[0]);
+		assertEquals("Invalid owner", 1L, server.getAttribute(name, "TokenizeCount"));
+		
+		other.disableProfiling();
+		assertTrue("MBean not unregistered", !server.isRegistered(name));
+		assertEquals("Profile not disabled", null, parser.getProfile());
+	}
+	
+	/**
+	 * Test specification from definition file.
+	 */
+	@Test
+	public void testSpecFromDefinition() throws Exception {
+		OptParserSpec spec = OptParserSpec.fromDefinition(Arrays.asList(
+				"# Copy",
+				"command cp \"Copy files\"",
+				"option v verbose optional \"\" \"Verbose output\"",
+				"option q quiet optional \"\" Quiet",
+				"value t target required . \"Target directory\"",
+				"",
+				"expression files optional \"\" Files variadic",
+				"constraint at-most-one verbose quiet"));
+		
+		OptParserSpec code = OptParserSpec.createSpec("cp", "Copy files")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose output")
+				.addOption('q', "quiet", OptParser.OPTIONAL, "", "Quiet")
+				.addOptionRequiredValue('t', "target", OptParser.REQUIRED, ".", "Target directory")
+				.addPathOrExpression("files", OptParser.OPTIONAL, "", "Files", OptParser.EXPRESSION_VARIADIC)
+				.addConstraint(OptParser.CONSTRAINT_AT_MOST_ONE, "verbose", "quiet");
+		
+		assertEquals("Invalid specification", code, spec);
+		assertEquals("Invalid files", Arrays.asList("a", "b"), spec.build().parse(new String[] {"-t", "x", "a", "b"}).getOptionValues("files"));
+		
+		try {
+			OptParserSpec.fromDefinition(Arrays.asList("command cp Copy", "value t target sometimes . Target"));
+			fail("Invalid definition expected");
+		} catch (IllegalArgumentException e) {
+			assertTrue("Invalid message: " + e.getMessage(), e.getMessage().startsWith("Definition line 2:"));
+		}
+	}
+	
+	/**
+	 * Test parser is swapped when definition file changes.
+	 */
+	@Test
+	public void testReloadingParser() throws Exception {
+		Path dir = Files.createTempDirectory("spec");
+		Path file = dir.resolve("cp.spec");
+		Files.write(file, Arrays.asList("command cp Copy", "option v verbose optional \"\" Verbose"));
+		
+		ReloadingOptParser reloading = new ReloadingOptParser(file);
+		try {
+			OptParser first = reloading.get();
+			assertTrue("Invalid verbose", reloading.parse(new String[] {"-v"}).isOptionFilled("verbose"));
+			
+			// Invalid definition keeps old parser
+			Files.write(file, Arrays.asList("command cp Copy", "option v"));
+			assertTrue("Invalid reload", !reloading.reload());
+			assertTrue("Missing error", reloading.getLastError() instanceof IllegalArgumentException);
+			assertTrue("Parser swapped", first == reloading.get());
+			
+			// Watcher swaps parser
+			Files.write(file, Arrays.asList("command cp Copy", "option v verbose optional \"\" Verbose", "value t target optional . Target"));
+			long deadline = System.currentTimeMillis() + 20000;
+			while (reloading.get() == first && System.currentTimeMillis() < deadline) {
+				Thread.sleep(20);
+			}
+			assertEquals("Invalid target", "/tmp", reloading.parse(new String[] {"-t", "/tmp"}).getOptionValue("target"));
+			
+			// Old parser still works
+			assertTrue("Invalid old parser", first.parse(new String[] {"-v"}).isOptionFilled("verbose"));
+			assertTrue("Unchanged spec swapped", !reloading.reload());
+		} finally {
+			reloading.close();
+			Files.delete(file);
+			Files.delete(dir);
+		}
+	}
+	
+	/**
+	 * Test parsers sharing option set keep own options and values.
+	 */
+	@Test
+	public void testSharedOptionSet() throws Exception {
+		OptionSet common = OptionSet.create()
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose output")
+				.addOptionRequiredValue('f', "format", OptParser.OPTIONAL, "text", "Output format");
+		
+		OptParser cp = OptParser.createOptionParser("cp", "Copy", common)
+				.addOptionRequiredValue('t', "target", OptParser.REQUIRED, "", "Target")
+				.addPathOrExpression("source", OptParser.REQUIRED, "", "Source");
+		OptParser ls = OptParser.createOptionParser("ls", "List", common)
+				.addOption('a', "all", OptParser.OPTIONAL, "", "All files");
+		
+		cp.parseArguments(new String[] {"-v", "-f", "json", "-t", "/tmp", "a.txt"});
+		assertEquals("Invalid format", "json", cp.getOptionValue("format"));
+		assertTrue("Invalid verbose", cp.isOptionFilled("verbose"));
+		assertEquals("Invalid target", "/tmp", cp.getOptionValue("target"));
+		
+		// Shared definitions are not changed by parse
+		assertEquals("Invalid ls format", "text", ls.getOptionValue("format"));
+		assertTrue("Invalid ls verbose", ls.getOption("verbose") == null);
+		assertTrue("Invalid ls all", ls.parse(new String[] {"-a", "--format", "csv"}).isOptionFilled("all"));
+		assertEquals("Invalid ls format", "csv", ls.parse(new String[] {"--format", "csv"}).getOptionValue("format"));
+		try {
+			ls.parseArguments(new String[] {"-t", "/tmp"});
+			fail("Unexpected option expected");
+		} catch (UnexpectedOption e) {
+			// Own option of other parser
+		}
+		
+		// Set changed later does not change created parsers
+		common.addOption('q', "quiet", OptParser.OPTIONAL, "", "Quiet");
+		assertEquals("Invalid set size", 3, common.size());
+		assertTrue("Invalid cp help", cp.getHelp().contains("--verbose") && !cp.getHelp().contains("--quiet"));
+		assertTrue("Invalid new parser", OptParser.createOptionParser("rm", "Remove", common).parse(new String[] {"-q"}).isOptionFilled("quiet"));
+		
+		try {
+			cp.addConverter("format", String::toUpperCase);
+			fail("Shared converter expected");
+		} catch (IllegalArgumentException e) {
+			// Converter belongs to set
+		}
+		
+		// Converter added later is used only by new parsers
+		common.addConverter("format", String::toUpperCase);
+		try {
+			cp.parse(new String[] {"-f", "json", "-t", "/tmp", "a"}).getConvertedValue("format");
+			fail("Missing converter expected");
+		} catch (InvalidOptionValue e) {
+			// Created before converter
+		}
+		OptParser mv = OptParser.createOptionParser("mv", "Move", common);
+		assertEquals("Invalid converted", "JSON", mv.parse(new String[] {"-f", "json"}).getConvertedValue("format"));
+	}
+	
+	/**
+	 * Test typed option keys.
+	 */
+	@Test
+	public void testOptionKeys() throws Exception {
+		OptParser parser = OptParser.createOptionParser("sleep", "Sleep");
+		OptionKey<String> verbose = parser.addOptionKey('v', "verbose", OptParser.OPTIONAL, "", "Verbose", OptParser.OPTION_NO_VALUE);
+		OptionKey<Duration> timeout = parser.addOptionKey('t', "timeout", OptParser.OPTIONAL, "PT1S", "Timeout", Duration::parse);
+		parser.addPathOrExpression("files", OptParser.OPTIONAL, "", "Files", OptParser.EXPRESSION_VARIADIC);
+		OptionKey<String> files = parser.getOptionKey("files");
+		
+		ParseResult result = parser.parse(new String[] {"-t", "PT5M", "a", "b"});
+		assertTrue("Invalid verbose", !result.isFilled(verbose));
+		assertEquals("Invalid timeout", Duration.ofMinutes(5), result.get(timeout));
+		assertEquals("Invalid raw timeout", "PT5M", result.getValue(timeout));
+		assertEquals("Invalid files", Arrays.asList("a", "b"), result.getValues(files));
+		assertEquals("Invalid default", Duration.ofSeconds(1), parser.parse(new String[] {"-v"}).get(timeout));
+		
+		// Converted once per result (null is not memoized by converter)
+		AtomicInteger conversions = new AtomicInteger();
+		OptionKey<Integer> level = parser.addOptionKey('l', "level", OptParser.OPTIONAL, "", "Level", v -> {
+			conversions.incrementAndGet();
+			return v.isEmpty() ? null : Integer.valueOf(v);
+		});
+		result = parser.parse(new String[] {"-v"});
+		for (int i = 0; i < 3; i++) {
+			assertEquals("Invalid converted default", null, result.get(level));
+		}
+		assertEquals("Invalid count of conversions", 1, conversions.get());
+		
+		// Keys of other parser are rejected
+		OptParser other = OptParser.createOptionParser("other", "Other")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose");
+		try {
+			other.parse(new String[] {"-v"}).isFilled(verbose);
+			fail("Foreign key expected");
+		} catch (IllegalArgumentException e) {
+			// Same id, different definition
+		}
+		
+		// Keys of shared options are valid in every parser of set
+		OptionSet common = OptionSet.create().addOption('q', "quiet", OptParser.OPTIONAL, "", "Quiet");
+		OptionKey<String> quiet = OptParser.createOptionParser("a", "A", common).getOptionKey("quiet");
+		assertTrue("Invalid shared key", OptParser.createOptionParser("b", "B", common).parse(new String[] {"-q"}).isFilled(quiet));
+	}
+	
+	/**
+	 * Test audit log records parses asynchronously and rotates file.
+	 */
+	@Test
+	public void testAuditLog() throws Exception {
+		Path dir = Files.createTempDirectory("audit");
+		Path file = dir.resolve("audit.log");
+		
+		AuditLog audit = new AuditLog(file, 4, AuditLog.POLICY_BLOCK, 1 << 20, 2);
+		OptParser parser = OptParser.createOptionParser("cp", "Copy")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addOptionRequiredValue('t', "target", OptParser.REQUIRED, "", "Target")
+				.addPathOrExpression("files", OptParser.OPTIONAL, "", "Files", OptParser.EXPRESSION_VARIADIC)
+				.setAuditLog(audit);
+		
+		parser.parseArguments(new String[] {"-v", "-t", "/tmp/a\tb", "x", "y"});
+		try {
+			parser.parse(new String[] {"-x"});
+			fail("Unexpected option expected");
+		} catch (UnexpectedOption e) {
+			// Failed parse is logged too
+		}
+		
+		// Lazy parse logs fixed options and raw parameters
+		parser.parseArgumentsLazily(new String[] {"-t", "/tmp", "x", "y"});
+		try {
+			parser.parseArgumentsLazily(new String[] {"x"});
+			fail("Missing options expected");
+		} catch (MissingOptions e) {
+			// Failed lazy parse is logged too
+		}
+		
+		// Blocking policy keeps every record
+		for (int i = 0; i < 100; i++) {
+			parser.parse(new String[] {"-t", "/tmp" + i});
+		}
+		audit.close();
+		
+		List<String> lines = Files.readAllLines(file);
+		assertEquals("Invalid count", 104, lines.size());
+		assertEquals("Invalid written", 104, audit.getWrittenCount());
+		assertEquals("Invalid dropped", 0, audit.getDroppedCount());
+		assertTrue("Invalid ok line: " + lines.get(0), lines.get(0).endsWith("\tcp\tok\t--verbose\t--target=/tmp/a\\tb\tfiles=x\tfiles=y"));
+		assertTrue("Invalid error line: " + lines.get(1), lines.get(1).matches(".*\tcp\terror\tUnexpectedOption\t[^\t]*\t-x"));
+		assertTrue("Invalid lazy line: " + lines.get(2), lines.get(2).endsWith("\tcp\tlazy\t--target=/tmp\t-t\t/tmp\tx\ty"));
+		assertTrue("Invalid lazy error line: " + lines.get(3), lines.get(3).matches(".*\tcp\terror\tMissingOptions\t[^\t]*\tx"));
+		
+		// Closed log drops records
+		parser.parse(new String[] {"-t", "/tmp"});
+		assertEquals("Invalid dropped", 1, audit.getDroppedCount());
+		
+		// Small file is rotated
+		audit = new AuditLog(file, 16, AuditLog.POLICY_DROP, 200, 2);
+		parser.setAuditLog(audit);
+		for (int i = 0; i < 50; i++) {
+			parser.parse(new String[] {"-t", "/tmp" + i});
+			audit.flush();
+		}
+		audit.close();
+		assertTrue("Missing rotated file", Files.exists(dir.resolve("audit.log.1")) && Files.exists(dir.resolve("audit.log.2")));
+		assertTrue("Too many rotated files", !Files.exists(dir.resolve("audit.log.3")));
+		
+		// Failed rotation appends to current file
+		Path blocked = dir.resolve("blocked.log");
+		Files.createDirectory(dir.resolve("blocked.log.1"));
+		Files.createFile(dir.resolve("blocked.log.1").resolve("x"));
+		audit = new AuditLog(blocked, 16, AuditLog.POLICY_DROP, 200, 1);
+		parser.setAuditLog(audit);
+		for (int i = 0; i < 20; i++) {
+			parser.parse(new String[] {"-t", "/tmp" + i});
+			audit.flush();
+		}
+		audit.close();
+		assertEquals("Invalid count", 20, Files.readAllLines(blocked).size());
+		assertEquals("Invalid written", 20, audit.getWrittenCount());
+		assertEquals("Invalid lost", 0, audit.getLostCount());
+		assertTrue("Missing rotation error", audit.getLastError() != null);
+		Files.delete(dir.resolve("blocked.log.1").resolve("x"));
+		
+		for (String name : dir.toFile().list()) {
+			Files.delete(dir.resolve(name));
+		}
+		Files.delete(dir);
+	}
+	
+	/**
+	 * Test parameters after end of options are passed through.
+	 */
+	@Test
+	public void testEndOfOptions() throws Exception {
+		OptParser parser = OptParser.createOptionParser("wrap", "Wrapper")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addPathOrExpression("tool", OptParser.OPTIONAL, "", "Tool");
+		
+		String[] args = new String[10003];
+		args[0] = "-v";
+		args[1] = "java";
+		args[2] = "--";
+		for (int i = 3; i < args.length; i++) {
+			args[i] = i % 2 == 0 ? "-" + i : "'unclosed";
+		}
+		
+		ParseResult result = parser.parse(args);
+		assertTrue("Invalid verbose", result.isOptionFilled("verbose"));
+		assertEquals("Invalid tool", "java", result.getOptionValue("tool"));
+		
+		// View of parameters - not tokenized, not copied
+		List<String> rest = result.getRemainingArguments();
+		assertEquals("Invalid count", 10000, rest.size());
+		assertTrue("Invalid value", rest.get(1) == args[4] && rest.get(0).equals("'unclosed"));
+		args[3] = "-z";
+		assertEquals("Not a view", "-z", rest.get(0));
+		try {
+			rest.add("x");
+			fail("Read-only view expected");
+		} catch (UnsupportedOperationException e) {
+			// Parameters can't be changed
+		}
+		
+		// Quoted or escaped -- is a value
+		assertEquals("Invalid quoted", "a -- b", parser.parse(new String[] {"'a", "--", "b'"}).getOptionValue("tool"));
+		assertTrue("Invalid escaped", parser.parse(new String[] {"-v\\", "--"}).getRemainingArguments().isEmpty());
+		
+		// Legacy parsing
+		parser.parseArguments(new String[] {"--", "-v", "--help"});
+		assertTrue("Invalid legacy verbose", !parser.isOptionFilled("verbose"));
+		assertEquals("Invalid legacy rest", Arrays.asList("-v", "--help"), parser.getRemainingArguments());
+	}
+	
+	/**
+	 * Test end of options in lazy parsing.
+	 */
+	@Test
+	public void testLazyEndOfOptions() throws Exception {
+		OptParser parser = OptParser.createOptionParser("xargs", "Process paths")
+				.addOption('v', "verbose", OptParser.OPTIONAL, "", "Verbose")
+				.addPathOrExpression("paths", OptParser.OPTIONAL, "", "Paths", OptParser.EXPRESSION_VARIADIC);
+		
+		// Between options
+		LazyPathsOrExpressions paths = parser.parseArgumentsLazily(new String[] {"-v", "--", "-x", "'unclosed"});
+		assertTrue("Invalid verbose", parser.isOptionFilled("verbose"));
+		assertFalse("Invalid values", paths.hasNext());
+		assertEquals("Invalid rest", Arrays.asList("-x", "'unclosed"), parser.getRemainingArguments());
+		
+		// After values, quoted -- is a value
+		paths = parser.parseArgumentsLazily(new String[] {"a", "'b", "--", "c'", "--", "-x", "'unclosed"});
+		List<String> values = new ArrayList<String>();
+		for (String path : paths) {
+			values.add(path);
+		}
+		assertEquals("Invalid lazy values", Arrays.asList("a", "b -- c"), values);
+		assertEquals("Invalid lazy rest", Arrays.asList("-x", "'unclosed"), paths.getRemainingArguments());
+	}
 }